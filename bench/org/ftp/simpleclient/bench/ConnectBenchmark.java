@@ -0,0 +1,60 @@
+package org.ftp.simpleclient.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.ftp.simpleclient.FtpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Latency of connecting to and logging in the embedded server, with or without TLS
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectBenchmark {
+
+	@Param({"false", "true"})
+	public boolean tls;
+
+	private EmbeddedFtpServer server;
+	private FtpClient client;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+
+		this.server = new EmbeddedFtpServer(this.tls);
+		this.client = this.server.newClient();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		this.server.stop();
+	}
+
+	@Benchmark
+	public boolean connectAndLogin(){
+
+		boolean done = this.client.connect() && this.client.login();
+		this.client.disconnect();
+		return FileTransferBenchmark.check(done);
+	}
+}
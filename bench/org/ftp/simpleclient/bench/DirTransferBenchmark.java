@@ -0,0 +1,136 @@
+package org.ftp.simpleclient.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.ftp.simpleclient.DeleteResult;
+import org.ftp.simpleclient.DirTransferResult;
+import org.ftp.simpleclient.FtpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Time of uploadDirFiles, downloadDirFiles and deleteDir of a whole directory against the embedded
+ * server, by number of files, over one session (the plain methods) or several (the overloads with
+ * a parallelism argument), with or without TLS. Every measurement is a single run of the operation
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DirTransferBenchmark {
+
+	@Param({"1", "100", "10000", "100000"})
+	public int count;
+
+	@Param({"1KB"})
+	public String size;
+
+	@Param({"1", "8"})
+	public int parallelism;
+
+	@Param({"false", "true"})
+	public boolean tls;
+
+	private EmbeddedFtpServer server;
+	private FtpClient client;
+	private File localDir;
+	private File source;
+	private File destination;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+
+		this.server = new EmbeddedFtpServer(this.tls);
+		this.localDir = EmbeddedFtpServer.createTempDir("ftp-bench-local");
+		this.source = new File(this.localDir, "source");
+		this.destination = new File(this.localDir, "destination");
+		this.destination.mkdirs();
+		fill(this.source);
+		fill(this.server.localPath("down"));
+		this.server.localPath("up").mkdirs();
+		this.client = this.server.newLoggedClient();
+	}
+
+	/**
+	 * The directory deleted in each run is filled again straight on the disk of the server
+	 */
+	@Setup(Level.Iteration)
+	public void fillTrash() throws Exception {
+		fill(this.server.localPath("trash"));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+
+		this.client.disconnect();
+		this.server.stop();
+		EmbeddedFtpServer.delete(this.localDir);
+	}
+
+	@Benchmark
+	public Object uploadDirFiles(){
+
+		if (this.parallelism == 1){
+			return FileTransferBenchmark.check(this.client.uploadDirFiles(this.source.getAbsolutePath(), "/up"));
+		}
+		return check(this.client.uploadDirFiles(this.source.getAbsolutePath(), "/up", this.parallelism));
+	}
+
+	@Benchmark
+	public Object downloadDirFiles(){
+
+		if (this.parallelism == 1){
+			return FileTransferBenchmark.check(this.client.downloadDirFiles("/down", this.destination.getAbsolutePath()));
+		}
+		return check(this.client.downloadDirFiles("/down", this.destination.getAbsolutePath(), this.parallelism));
+	}
+
+	@Benchmark
+	public Object deleteDir(){
+
+		if (this.parallelism == 1){
+			return FileTransferBenchmark.check(this.client.deleteDir("/trash"));
+		}
+		DeleteResult result = this.client.deleteDir("/trash", this.parallelism, null);
+		return FileTransferBenchmark.check(result != null && result.isSuccessful());
+	}
+
+	/**
+	 * Helping method that fills a directory with count files of the benchmark size
+	 */
+	private void fill(File dir) throws Exception {
+
+		dir.mkdirs();
+		long bytes = EmbeddedFtpServer.parseSize(this.size);
+		for (int i=0; i<this.count; i++){
+			EmbeddedFtpServer.writeFile(new File(dir, "file" + i + ".bin"), bytes);
+		}
+	}
+
+	/**
+	 * A failed transfer must not be measured as a fast one
+	 */
+	private static DirTransferResult check(DirTransferResult result){
+
+		FileTransferBenchmark.check(result != null && result.isSuccessful());
+		return result;
+	}
+}
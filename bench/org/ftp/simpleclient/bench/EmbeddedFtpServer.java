@@ -0,0 +1,272 @@
+package org.ftp.simpleclient.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.ssl.SslConfigurationFactory;
+import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+import org.ftp.simpleclient.FtpClient;
+import org.ftp.simpleclient.FtpClient.secure;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Apache FtpServer running in the benchmark JVM on loopback, with a single user whose home is a
+ * temporary directory. With TLS it accepts explicit FTPS (AUTH TLS) using a self signed key
+ * generated with keytool the first time
+ *
+ */
+public class EmbeddedFtpServer {
+
+	public static final String USER = "bench";
+	public static final String PASSWORD = "bench";
+	private static final String KEYSTORE_PASSWORD = "benchpass";
+
+	private final FtpServer server;
+	private final int port;
+	private final boolean tls;
+	private final File home;
+
+	/**
+	 * Starts a server on a free loopback port
+	 *
+	 * @param	tls		If true the server accepts explicit FTPS
+	 *
+	 * @throws	Exception	If the server can not be started
+	 */
+	public EmbeddedFtpServer(boolean tls) throws Exception {
+
+		this.tls = tls;
+		this.home = createTempDir("ftp-bench-home");
+		this.port = freePort();
+
+		ListenerFactory listener = new ListenerFactory();
+		listener.setServerAddress("127.0.0.1");
+		listener.setPort(this.port);
+		if (tls){
+			SslConfigurationFactory ssl = new SslConfigurationFactory();
+			ssl.setKeystoreFile(keystore());
+			ssl.setKeystorePassword(KEYSTORE_PASSWORD);
+			listener.setSslConfiguration(ssl.createSslConfiguration());
+			listener.setImplicitSsl(false);
+		}
+
+		FtpServerFactory factory = new FtpServerFactory();
+		factory.addListener("default", listener.createListener());
+		ConnectionConfigFactory connections = new ConnectionConfigFactory();
+		connections.setMaxLogins(1000);
+		connections.setMaxThreads(1000);
+		connections.setAnonymousLoginEnabled(false);
+		factory.setConnectionConfig(connections.createConnectionConfig());
+		factory.setUserManager(userManager(this.home));
+
+		this.server = factory.createServer();
+		this.server.start();
+	}
+
+	/**
+	 * Stops the server and deletes its home directory
+	 */
+	public void stop(){
+
+		this.server.stop();
+		delete(this.home);
+	}
+
+	/**
+	 * Creates a client for this server, set up but not connected
+	 *
+	 * @return	The client
+	 */
+	public FtpClient newClient(){
+
+		FtpClient client = new FtpClient("127.0.0.1", this.port, USER, PASSWORD, this.tls ? secure.FTPES : secure.FTP, true);
+		client.setupClient();
+		return client;
+	}
+
+	/**
+	 * Creates a client for this server, connected and logged in
+	 *
+	 * @return	The client
+	 */
+	public FtpClient newLoggedClient(){
+
+		FtpClient client = newClient();
+		if (!client.connect() || !client.login()){
+			throw new IllegalStateException("Could not log in the embedded FTP server at port " + this.port);
+		}
+		return client;
+	}
+
+	/**
+	 * Parses a size such as 1KB, 10MB or 1GB
+	 *
+	 * @param	size	The size
+	 *
+	 * @return	The size in bytes
+	 */
+	public static long parseSize(String size){
+
+		String value = size.trim().toUpperCase();
+		long unit = 1;
+		if (value.endsWith("KB")){
+			unit = 1024;
+		}
+		else if (value.endsWith("MB")){
+			unit = 1024 * 1024;
+		}
+		else if (value.endsWith("GB")){
+			unit = 1024 * 1024 * 1024;
+		}
+		if (unit > 1){
+			value = value.substring(0, value.length() - 2);
+		}
+		return Long.parseLong(value) * unit;
+	}
+
+	/**
+	 * Writes a file of random contents, so a compressing transfer can not cheat
+	 *
+	 * @param	file	The file
+	 * @param	size	Its size in bytes
+	 *
+	 * @throws	IOException	If the file can not be written
+	 */
+	public static void writeFile(File file, long size) throws IOException {
+
+		byte[] block = new byte[(int) Math.min(size, 1024 * 1024)];
+		new Random(size).nextBytes(block);
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.setLength(0);
+			long written = 0;
+			while (written < size){
+				int length = (int) Math.min(block.length, size - written);
+				out.write(block, 0, length);
+				written += length;
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Creates an empty temporary directory
+	 *
+	 * @param	prefix	The prefix of its name
+	 *
+	 * @return	The directory
+	 *
+	 * @throws	IOException	If it can not be created
+	 */
+	public static File createTempDir(String prefix) throws IOException {
+
+		File dir = File.createTempFile(prefix, "");
+		if (!dir.delete() || !dir.mkdir()){
+			throw new IOException("Could not create temporary directory " + dir);
+		}
+		return dir;
+	}
+
+	/**
+	 * Deletes a file or a directory and everything under it
+	 *
+	 * @param	file	The file or directory
+	 */
+	public static void delete(File file){
+
+		File[] children = file.listFiles();
+		if (children != null){
+			for (File child : children){
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * The directory of the server where a path of the FTP server lives
+	 *
+	 * @param	path	The path in the FTP server, i.e. /up
+	 *
+	 * @return	The local directory
+	 */
+	public File localPath(String path){
+		return new File(this.home, path);
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public boolean isTls() {
+		return tls;
+	}
+
+	/**
+	 * Helping method that gives the user manager with the benchmark user
+	 */
+	private static UserManager userManager(File home) throws FtpException {
+
+		UserManager users = new PropertiesUserManagerFactory().createUserManager();
+		BaseUser user = new BaseUser();
+		user.setName(USER);
+		user.setPassword(PASSWORD);
+		user.setHomeDirectory(home.getAbsolutePath());
+		List<Authority> authorities = new ArrayList<Authority>();
+		authorities.add(new WritePermission());
+		user.setAuthorities(authorities);
+		users.save(user);
+		return users;
+	}
+
+	/**
+	 * Helping method that gives the keystore of the server, generating it with keytool the first time
+	 */
+	private static File keystore() throws IOException, InterruptedException {
+
+		File keystore = new File(System.getProperty("java.io.tmpdir"), "ftp-bench-keystore.jks");
+		if (keystore.exists()){
+			return keystore;
+		}
+		String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+		Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "bench", "-keyalg", "RSA", "-keysize", "2048",
+				"-validity", "3650", "-dname", "CN=localhost", "-storetype", "JKS", "-keystore", keystore.getAbsolutePath(),
+				"-storepass", KEYSTORE_PASSWORD, "-keypass", KEYSTORE_PASSWORD).inheritIO().start();
+		if (process.waitFor() != 0){
+			throw new IOException("keytool could not generate " + keystore);
+		}
+		return keystore;
+	}
+
+	/**
+	 * Helping method that finds a free port on loopback
+	 */
+	private static int freePort() throws IOException {
+
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		}
+		finally {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package org.ftp.simpleclient.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.ftp.simpleclient.FtpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Time of uploadFile and downloadFile of a single file against the embedded server, by file size
+ * and with or without TLS
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FileTransferBenchmark {
+
+	private static final String FILE_NAME = "data.bin";
+
+	@Param({"1KB", "1MB", "100MB", "1GB"})
+	public String size;
+
+	@Param({"false", "true"})
+	public boolean tls;
+
+	private EmbeddedFtpServer server;
+	private FtpClient client;
+	private File localDir;
+	private File source;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+
+		this.server = new EmbeddedFtpServer(this.tls);
+		this.localDir = EmbeddedFtpServer.createTempDir("ftp-bench-local");
+		this.source = new File(this.localDir, FILE_NAME);
+		new File(this.localDir, "down").mkdirs();
+		EmbeddedFtpServer.writeFile(this.source, EmbeddedFtpServer.parseSize(this.size));
+		//the file to download is placed straight on the disk of the server
+		File down = this.server.localPath("down");
+		down.mkdirs();
+		EmbeddedFtpServer.writeFile(new File(down, FILE_NAME), EmbeddedFtpServer.parseSize(this.size));
+		this.server.localPath("up").mkdirs();
+		this.client = this.server.newLoggedClient();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+
+		this.client.disconnect();
+		this.server.stop();
+		EmbeddedFtpServer.delete(this.localDir);
+	}
+
+	@Benchmark
+	public boolean uploadFile(){
+		return check(this.client.uploadFile(this.source.getAbsolutePath(), "/up"));
+	}
+
+	@Benchmark
+	public boolean downloadFile(){
+		return check(this.client.downloadFile(FILE_NAME, "/down", new File(this.localDir, "down").getAbsolutePath()));
+	}
+
+	/**
+	 * A failed transfer must not be measured as a fast one
+	 */
+	static boolean check(boolean done){
+
+		if (!done){
+			throw new IllegalStateException("Transfer failed, see the log");
+		}
+		return done;
+	}
+}
@@ -0,0 +1,366 @@
+package org.ftp.simpleclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Asynchronous front end of an FtpClient. Every operation runs in an executor and returns at once
+ * a CompletableFuture with its outcome. By default each operation gets a virtual thread when the
+ * JDK has them, so thousands of operations can wait for a session without as many platform threads.
+ *
+ * Operations run at once as far as the sessions of the client allow: those of its session pool,
+ * or up to maxSessions of its own when it has none. Cancelling the future of a file transfer with
+ * mayInterruptIfRunning aborts the data transfer in progress (ABOR)
+ *
+ */
+public class AsyncFtpClient {
+
+	/**
+	 * A logger object
+	 */
+	private static final Logger logger = Logger.getLogger(AsyncFtpClient.class);
+
+	/**
+	 * The client doing the work
+	 */
+	private final FtpClient client;
+	/**
+	 * Where the operations run
+	 */
+	private final Executor executor;
+	/**
+	 * If true the executor was created here and is shut down with this object
+	 */
+	private final boolean ownExecutor;
+
+	/**
+	 * Future of an operation that knows the thread running it, so cancelling it can abort the transfer
+	 */
+	private class OperationFuture<T> extends CompletableFuture<T> {
+
+		/**
+		 * The thread running the operation, null before it starts and after it ends
+		 */
+		private Thread worker;
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			//otherwise a running operation is left to finish, its result is dropped
+			if (cancelled && mayInterruptIfRunning){
+				synchronized (this) {
+					if (this.worker != null){
+						client.abortTransfer(this.worker);
+						//stops the retries of the transfer
+						this.worker.interrupt();
+					}
+				}
+			}
+			return cancelled;
+		}
+	}
+
+	/**
+	 * Constructor, operations run in virtual threads if the JDK has them, otherwise in a cached thread pool
+	 *
+	 * @param	client		The client doing the work, set up already
+	 *
+	 */
+	public AsyncFtpClient(FtpClient client){
+		this(client, newDefaultExecutor(), true);
+	}
+
+	/**
+	 * Constructor, operations run in the given executor, which is not shut down by this object
+	 *
+	 * @param	client		The client doing the work, set up already
+	 * @param	executor	Where the operations run
+	 *
+	 */
+	public AsyncFtpClient(FtpClient client, Executor executor){
+		this(client, executor, false);
+	}
+
+	private AsyncFtpClient(FtpClient client, Executor executor, boolean ownExecutor){
+
+		this.client = client;
+		this.executor = executor;
+		this.ownExecutor = ownExecutor;
+	}
+
+	/**
+	 * Connects the client to the FTP server
+	 *
+	 * @return	A future completed with true if the connection was established
+	 */
+	public CompletableFuture<Boolean> connect(){
+		return submit(() -> client.connect());
+	}
+
+	/**
+	 * Logs the client in the FTP server
+	 *
+	 * @return	A future completed with true if the login was successful
+	 */
+	public CompletableFuture<Boolean> login(){
+		return submit(() -> client.login());
+	}
+
+	/**
+	 * Disconnects the client from the FTP server
+	 *
+	 * @return	A future completed with true if the client was disconnected
+	 */
+	public CompletableFuture<Boolean> disconnect(){
+		return submit(() -> client.disconnect());
+	}
+
+	/**
+	 * Uploads a file to the destination directory
+	 *
+	 * @param	filepath	The absolute path to the file to upload
+	 * @param	destDir		The destination directory where the file will be placed
+	 *
+	 * @return	A future completed with the result of the upload
+	 */
+	public CompletableFuture<TransferResult> uploadFile(String filepath, String destDir){
+
+		final File file = new File(filepath);
+		return submit(() -> {
+			long start = System.currentTimeMillis();
+			boolean done = client.uploadFile(filepath, destDir);
+			return result(file.getName(), done, file.length(), start);
+		});
+	}
+
+	/**
+	 * Downloads a file to the destination directory
+	 *
+	 * @param	file		The name of the file to download, just the name no path required
+	 * @param	sourceDir	The path where the file is located in the FTP server
+	 * @param	destDir		The local path where the file will be saved
+	 *
+	 * @return	A future completed with the result of the download
+	 */
+	public CompletableFuture<TransferResult> downloadFile(String file, String sourceDir, String destDir){
+
+		final File localFile = new File(destDir, file);
+		return submit(() -> {
+			long start = System.currentTimeMillis();
+			boolean done = client.downloadFile(file, sourceDir, destDir);
+			return result(file, done, localFile.length(), start);
+		});
+	}
+
+	/**
+	 * Uploads the contents of a stream as a file of the FTP server. The stream is not closed
+	 *
+	 * @param	remotePath	The path of the file in the FTP server
+	 * @param	in			The stream with the contents of the file
+	 *
+	 * @return	A future completed with the result of the upload, the bytes are not counted
+	 */
+	public CompletableFuture<TransferResult> upload(String remotePath, InputStream in){
+
+		return submit(() -> {
+			long start = System.currentTimeMillis();
+			return result(remotePath, client.upload(remotePath, in), 0, start);
+		});
+	}
+
+	/**
+	 * Downloads a file of the FTP server into a stream. The stream is not closed
+	 *
+	 * @param	remotePath	The path of the file in the FTP server
+	 * @param	out			The stream the contents of the file are written to
+	 *
+	 * @return	A future completed with the result of the download, the bytes are not counted
+	 */
+	public CompletableFuture<TransferResult> download(String remotePath, OutputStream out){
+
+		return submit(() -> {
+			long start = System.currentTimeMillis();
+			return result(remotePath, client.download(remotePath, out), 0, start);
+		});
+	}
+
+	/**
+	 * Uploads the files within the source directory over several sessions
+	 *
+	 * @param	sourceDir		The source directory where the files are located
+	 * @param	destDir			The destination directory where the files will be placed
+	 * @param	parallelism		The number of sessions uploading at once
+	 *
+	 * @return	A future completed with the result of each file, or exceptionally if the upload could not be started
+	 */
+	public CompletableFuture<DirTransferResult> uploadDirFiles(String sourceDir, String destDir, int parallelism){
+		return submit(() -> started(client.uploadDirFiles(sourceDir, destDir, parallelism), "Upload of " + sourceDir));
+	}
+
+	/**
+	 * Downloads the files within the source directory over several sessions
+	 *
+	 * @param	sourceDir		The source directory where the files are located in the FTP server
+	 * @param	destDir			The local directory where the files will be placed
+	 * @param	parallelism		The number of sessions downloading at once
+	 *
+	 * @return	A future completed with the result of each file, or exceptionally if the download could not be started
+	 */
+	public CompletableFuture<DirTransferResult> downloadDirFiles(String sourceDir, String destDir, int parallelism){
+		return submit(() -> started(client.downloadDirFiles(sourceDir, destDir, parallelism), "Download of " + sourceDir));
+	}
+
+	/**
+	 * Deletes a directory of the FTP server and everything under it over several sessions
+	 *
+	 * @param	sourceDir		The directory to delete in the FTP server
+	 * @param	parallelism		The number of sessions deleting at once
+	 *
+	 * @return	A future completed with the entries deleted and failed, or exceptionally if the delete could not be started
+	 */
+	public CompletableFuture<DeleteResult> deleteDir(String sourceDir, int parallelism){
+		return submit(() -> started(client.deleteDir(sourceDir, parallelism, null), "Deletion of " + sourceDir));
+	}
+
+	/**
+	 * Shuts down the executor if it was created by this object, operations already submitted still run
+	 */
+	public void shutdown(){
+
+		if (this.ownExecutor){
+			((ExecutorService) this.executor).shutdown();
+		}
+	}
+
+	/**
+	 * Helping method that runs an operation in the executor
+	 *
+	 * @param	operation	The operation
+	 *
+	 * @return	The future of the operation
+	 */
+	private <T> CompletableFuture<T> submit(final Callable<T> operation){
+
+		final OperationFuture<T> future = new OperationFuture<T>();
+		try {
+			this.executor.execute(() -> run(future, operation));
+		}
+		catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Helping method that runs an operation in the current thread and completes its future
+	 *
+	 * @param	future		The future of the operation
+	 * @param	operation	The operation
+	 */
+	private <T> void run(OperationFuture<T> future, Callable<T> operation){
+
+		synchronized (future) {
+			if (future.isDone()){
+				//cancelled before it started
+				return;
+			}
+			future.worker = Thread.currentThread();
+		}
+		this.client.clearLastError();
+		try {
+			future.complete(operation.call());
+		}
+		catch (Exception e) {
+			logger.error("Asynchronous operation failed: " + e.getMessage());
+			future.completeExceptionally(e);
+		}
+		finally {
+			synchronized (future) {
+				future.worker = null;
+				//do not leave the interrupt of a cancel to the next operation of a pooled thread
+				Thread.interrupted();
+			}
+		}
+	}
+
+	/**
+	 * Helping method that builds the result of a single file operation, with the last error of the
+	 * client in this thread as the cause of a failure
+	 */
+	private TransferResult result(String name, boolean done, long bytes, long start){
+
+		long elapsed = System.currentTimeMillis() - start;
+		if (done){
+			return new TransferResult(name, bytes, elapsed);
+		}
+		Exception error = this.client.getLastError();
+		if (error == null){
+			error = new IOException("Transfer of " + name + " failed");
+		}
+		return new TransferResult(name, elapsed, error);
+	}
+
+	/**
+	 * Helping method that turns the null returned by an operation that could not start into the
+	 * last error of the client in this thread
+	 */
+	private <T> T started(T result, String operation) throws Exception {
+
+		if (result == null){
+			Exception error = this.client.getLastError();
+			throw error != null ? error : new IllegalStateException(operation + " could not be started");
+		}
+		return result;
+	}
+
+	/**
+	 * Helping method that creates an executor with a virtual thread per task, looked up by reflection
+	 * so the class still runs on JDKs without them, where a cached thread pool is used instead
+	 *
+	 * @return	The executor
+	 */
+	private static ExecutorService newDefaultExecutor(){
+
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch (NoSuchMethodException e) {
+			logger.info("Virtual threads not available, using a cached thread pool");
+		}
+		catch (IllegalAccessException e) {
+			logger.info("Virtual threads not available, using a cached thread pool");
+		}
+		catch (InvocationTargetException e) {
+			logger.info("Virtual threads not available, using a cached thread pool");
+		}
+		return Executors.newCachedThreadPool();
+	}
+
+	/**
+	 *  Getters and setters
+	 *
+	 */
+	public FtpClient getClient() {
+		return client;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+}
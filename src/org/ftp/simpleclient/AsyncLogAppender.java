@@ -0,0 +1,218 @@
+package org.ftp.simpleclient;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Layout;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Console appender that writes from a thread of its own, so logging threads only put the event in
+ * a bounded queue and go on. When the queue is full events are dropped, and how many were dropped
+ * is written once there is room again, unless Blocking is set. Unlike the AsyncAppender of log4j
+ * 1.2 it can be set up from a properties file:
+ *
+ * log4j.appender.async=org.ftp.simpleclient.AsyncLogAppender
+ * log4j.appender.async.BufferSize=8192
+ * log4j.appender.async.layout=org.apache.log4j.PatternLayout
+ *
+ * Locations (%F, %L, %M) are expensive to find and are only kept if LocationInfo is set
+ *
+ */
+public class AsyncLogAppender extends AppenderSkeleton {
+
+	/**
+	 * Most events waiting to be written
+	 */
+	private int bufferSize = 8192;
+	/**
+	 * If true a full queue makes logging threads wait instead of dropping events
+	 */
+	private boolean blocking = false;
+	/**
+	 * If true the location of each event is found before it is queued
+	 */
+	private boolean locationInfo = false;
+	/**
+	 * System.out or System.err
+	 */
+	private String target = "System.out";
+	/**
+	 * Events waiting to be written
+	 */
+	private BlockingQueue<LoggingEvent> queue;
+	/**
+	 * The thread writing the events
+	 */
+	private Thread dispatcher;
+	/**
+	 * Events dropped since the last time it was reported
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+
+	public void activateOptions() {
+
+		this.queue = new ArrayBlockingQueue<LoggingEvent>(Math.max(1, this.bufferSize));
+		PrintStream stream = "System.err".equalsIgnoreCase(this.target) ? System.err : System.out;
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(stream), 64 * 1024);
+		this.dispatcher = new Thread(new Runnable() {
+			public void run() {
+				dispatch(writer);
+			}
+		}, "AsyncLogAppender-" + getName());
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+	}
+
+	protected void append(LoggingEvent event) {
+
+		if (this.queue == null){
+			errorHandler.error("Appender " + getName() + " was not activated");
+			return;
+		}
+		//what depends on the calling thread is taken now, the rest when it is written
+		event.getThreadName();
+		event.getNDC();
+		event.getMDCCopy();
+		event.getRenderedMessage();
+		event.getThrowableStrRep();
+		if (this.locationInfo){
+			event.getLocationInformation();
+		}
+		if (this.blocking){
+			try {
+				this.queue.put(event);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		else if (!this.queue.offer(event)){
+			this.dropped.incrementAndGet();
+		}
+	}
+
+	public synchronized void close() {
+
+		if (this.closed){
+			return;
+		}
+		this.closed = true;
+		if (this.dispatcher != null){
+			//writes what is queued and stops
+			this.dispatcher.interrupt();
+			try {
+				this.dispatcher.join(5000);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public boolean requiresLayout() {
+		return true;
+	}
+
+	/**
+	 * Helping method run by the dispatcher thread, writes events until the appender is closed
+	 *
+	 * @param	writer		Where the events are written
+	 */
+	private void dispatch(Writer writer){
+
+		boolean running = true;
+		while (running || !this.queue.isEmpty()){
+			try {
+				LoggingEvent event = running ? this.queue.poll(1, TimeUnit.SECONDS) : this.queue.poll();
+				if (event != null){
+					write(writer, event);
+				}
+				long lost = this.dropped.getAndSet(0);
+				if (lost > 0){
+					writer.write("WARN " + lost + " log events dropped, the log queue was full" + Layout.LINE_SEP);
+				}
+				//flush once the burst is over
+				if (this.queue.isEmpty()){
+					writer.flush();
+				}
+			}
+			catch (InterruptedException e) {
+				running = false;
+			}
+			catch (IOException e) {
+				errorHandler.error("Could not write log event: " + e.getMessage());
+			}
+		}
+		try {
+			writer.flush();
+		}
+		catch (IOException e) {
+			errorHandler.error("Could not write log event: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Helping method that writes an event with the layout
+	 */
+	private void write(Writer writer, LoggingEvent event) throws IOException {
+
+		writer.write(this.layout.format(event));
+		if (this.layout.ignoresThrowable()){
+			String[] lines = event.getThrowableStrRep();
+			if (lines != null){
+				for (int i=0; i<lines.length; i++){
+					writer.write(lines[i]);
+					writer.write(Layout.LINE_SEP);
+				}
+			}
+		}
+	}
+
+	/**
+	 *  Getters and setters
+	 *
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public boolean getBlocking() {
+		return blocking;
+	}
+
+	public void setBlocking(boolean blocking) {
+		this.blocking = blocking;
+	}
+
+	public boolean getLocationInfo() {
+		return locationInfo;
+	}
+
+	public void setLocationInfo(boolean locationInfo) {
+		this.locationInfo = locationInfo;
+	}
+
+	public String getTarget() {
+		return target;
+	}
+
+	public void setTarget(String target) {
+		this.target = target;
+	}
+}
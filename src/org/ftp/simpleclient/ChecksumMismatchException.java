@@ -0,0 +1,61 @@
+package org.ftp.simpleclient;
+
+import java.io.IOException;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Thrown when the checksum of a transferred file does not match the one of its copy in the FTP
+ * server, after trying the transfer again as many times as the retry policy allows
+ *
+ */
+public class ChecksumMismatchException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Name of the file
+	 */
+	private final String name;
+	/**
+	 * Checksum of the copy in the FTP server
+	 */
+	private final String expected;
+	/**
+	 * Checksum of the bytes transferred
+	 */
+	private final String actual;
+
+	/**
+	 * Constructor
+	 *
+	 * @param	name		The name of the file
+	 * @param	expected	The checksum of the copy in the FTP server
+	 * @param	actual		The checksum of the bytes transferred
+	 *
+	 */
+	public ChecksumMismatchException(String name, String expected, String actual){
+
+		super("Checksum of " + name + " is " + actual + ", the server says " + expected);
+		this.name = name;
+		this.expected = expected;
+		this.actual = actual;
+	}
+
+	/**
+	 *  Getters and setters
+	 *
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public String getExpected() {
+		return expected;
+	}
+
+	public String getActual() {
+		return actual;
+	}
+}
@@ -0,0 +1,342 @@
+package org.ftp.simpleclient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import it.sauronsoftware.ftp4j.FTPAbortedException;
+import it.sauronsoftware.ftp4j.FTPClient;
+import it.sauronsoftware.ftp4j.FTPDataTransferException;
+import it.sauronsoftware.ftp4j.FTPException;
+import it.sauronsoftware.ftp4j.FTPIllegalReplyException;
+import it.sauronsoftware.ftp4j.FTPReply;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Checksums of the files being transferred, computed by streams the data goes through so the file
+ * is not read again afterwards. The checksum of the copy in the server is asked with HASH (after
+ * OPTS HASH), or with the older XCRC, XMD5 and XSHA256 commands. If the server knows none of them
+ * it is read from a sidecar file next to the remote file, named after it plus the algorithm
+ * (file.sha256), holding the hex checksum first as sha256sum writes it
+ *
+ */
+class Checksums {
+
+	/**
+	 * A logger object
+	 */
+	private static final Logger logger = Logger.getLogger(Checksums.class);
+
+	/**
+	 * A checksum being computed
+	 */
+	static abstract class Digest {
+
+		abstract void update(byte[] data, int offset, int length);
+
+		/**
+		 * @return	The checksum of everything given so far, in lowercase hex
+		 */
+		abstract String hex();
+	}
+
+	/**
+	 * Gives a new checksum of the given algorithm
+	 *
+	 * @param	algorithm	The algorithm, not NONE
+	 *
+	 * @return	The empty checksum
+	 */
+	static Digest newDigest(FtpClient.checksum algorithm){
+
+		if (algorithm == FtpClient.checksum.CRC32){
+			final CRC32 crc = new CRC32();
+			return new Digest() {
+				void update(byte[] data, int offset, int length) {
+					crc.update(data, offset, length);
+				}
+				String hex() {
+					return String.format("%08x", crc.getValue());
+				}
+			};
+		}
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(algorithm == FtpClient.checksum.MD5 ? "MD5" : "SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			//every JDK has both
+			throw new IllegalStateException(e);
+		}
+		return new Digest() {
+
+			private String hex;
+
+			void update(byte[] data, int offset, int length) {
+				digest.update(data, offset, length);
+			}
+			String hex() {
+				if (this.hex == null){
+					StringBuilder builder = new StringBuilder();
+					for (byte b : digest.digest()){
+						builder.append(String.format("%02x", b & 0xff));
+					}
+					this.hex = builder.toString();
+				}
+				return this.hex;
+			}
+		};
+	}
+
+	/**
+	 * Input stream adding what is read, and what is skipped, to a checksum. Skipped bytes are read,
+	 * a resumed upload skips the part already in the server but the checksum covers the whole file
+	 */
+	static class ChecksumInputStream extends FilterInputStream {
+
+		private final Digest digest;
+
+		ChecksumInputStream(InputStream in, Digest digest){
+			super(in);
+			this.digest = digest;
+		}
+
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+		}
+
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read > 0){
+				this.digest.update(buffer, offset, read);
+			}
+			return read;
+		}
+
+		public long skip(long n) throws IOException {
+			byte[] buffer = new byte[(int) Math.min(n, 64 * 1024)];
+			long skipped = 0;
+			while (skipped < n){
+				int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+				if (read < 0){
+					break;
+				}
+				skipped += read;
+			}
+			return skipped;
+		}
+
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	/**
+	 * Output stream adding what is written to a checksum
+	 */
+	static class ChecksumOutputStream extends FilterOutputStream {
+
+		private final Digest digest;
+
+		ChecksumOutputStream(OutputStream out, Digest digest){
+			super(out);
+			this.digest = digest;
+		}
+
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		public void write(byte[] buffer, int offset, int length) throws IOException {
+			this.out.write(buffer, offset, length);
+			this.digest.update(buffer, offset, length);
+		}
+	}
+
+	/**
+	 * Adds the first bytes of a local file to a checksum, for the part of a file that is not transferred
+	 *
+	 * @param	digest		The checksum
+	 * @param	file		The local file
+	 * @param	length		How many bytes to add
+	 *
+	 * @throws	IOException	If the file could not be read
+	 */
+	static void update(Digest digest, File file, long length) throws IOException {
+
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			long left = length;
+			int read;
+			while (left > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, left))) != -1){
+				digest.update(buffer, 0, read);
+				left -= read;
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Asks the server for the checksum of a file in the working directory, with the commands the
+	 * server is not known to lack
+	 *
+	 * @param	ftpClient		The FTPClient object of the session
+	 * @param	name			The name of the file
+	 * @param	algorithm		The algorithm, not NONE
+	 * @param	capabilities	What the server supports, updated with its replies
+	 *
+	 * @return	The checksum in lowercase hex, null if the server can not give it
+	 */
+	static String serverChecksum(FTPClient ftpClient, String name, FtpClient.checksum algorithm, ServerCapabilities capabilities) throws IllegalStateException, IOException, FTPIllegalReplyException {
+
+		int length = hexLength(algorithm);
+		String hash = "HASH " + hashName(algorithm);
+		if (!Boolean.FALSE.equals(capabilities.supports(hash))){
+			FTPReply reply = ftpClient.sendCustomCommand("OPTS HASH " + hashName(algorithm));
+			if (reply.isSuccessCode()){
+				reply = ftpClient.sendCustomCommand("HASH " + name);
+				capabilities.replied(hash, reply.getCode());
+				String hex = findHex(reply, length);
+				if (hex != null){
+					return hex;
+				}
+			}
+			else{
+				//no HASH, or not with this algorithm
+				capabilities.failed(hash);
+			}
+		}
+		String legacy = legacyCommand(algorithm);
+		if (Boolean.FALSE.equals(capabilities.supports(legacy))){
+			return null;
+		}
+		FTPReply reply = ftpClient.sendCustomCommand(legacy + " " + name);
+		capabilities.replied(legacy, reply.getCode());
+		return findHex(reply, length);
+	}
+
+	/**
+	 * Reads the checksum of a file in the working directory from its sidecar file
+	 *
+	 * @param	ftpClient	The FTPClient object of the session
+	 * @param	name		The name of the file
+	 * @param	algorithm	The algorithm, not NONE
+	 *
+	 * @return	The checksum in lowercase hex, null if there is no usable sidecar file
+	 */
+	static String sidecarChecksum(FTPClient ftpClient, String name, FtpClient.checksum algorithm) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPDataTransferException, FTPAbortedException {
+
+		String sidecar = sidecarName(name, algorithm);
+		try {
+			ftpClient.fileSize(sidecar);
+		}
+		catch (FTPException e) {
+			return null;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			ftpClient.download(sidecar, out, 0, null);
+		}
+		catch (FTPException e) {
+			logger.error("Could not read checksum file " + sidecar + ": " + e.getMessage());
+			return null;
+		}
+		String text = new String(out.toByteArray(), StandardCharsets.US_ASCII).trim();
+		String hex = text.split("\\s+")[0].toLowerCase();
+		if (hex.length() != hexLength(algorithm) || !hex.matches("[0-9a-f]+")){
+			logger.error("Checksum file " + sidecar + " does not hold a " + algorithm + " checksum");
+			return null;
+		}
+		return hex;
+	}
+
+	/**
+	 * Writes the sidecar file of a file in the working directory
+	 *
+	 * @param	ftpClient	The FTPClient object of the session
+	 * @param	name		The name of the file
+	 * @param	algorithm	The algorithm, not NONE
+	 * @param	hex			The checksum of the file
+	 */
+	static void writeSidecar(FTPClient ftpClient, String name, FtpClient.checksum algorithm, String hex) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException, FTPDataTransferException, FTPAbortedException {
+
+		byte[] text = (hex + "  " + name + "\n").getBytes(StandardCharsets.UTF_8);
+		ftpClient.upload(sidecarName(name, algorithm), new ByteArrayInputStream(text), 0, 0, null);
+	}
+
+	/**
+	 * Helping method that gives the name of the sidecar file of a file
+	 */
+	private static String sidecarName(String name, FtpClient.checksum algorithm){
+		return name + "." + algorithm.name().toLowerCase();
+	}
+
+	/**
+	 * Helping method that gives the length in hex digits of the checksums of an algorithm
+	 */
+	private static int hexLength(FtpClient.checksum algorithm){
+
+		if (algorithm == FtpClient.checksum.CRC32){
+			return 8;
+		}
+		return algorithm == FtpClient.checksum.MD5 ? 32 : 64;
+	}
+
+	/**
+	 * Helping method that gives the name of an algorithm for OPTS HASH
+	 */
+	private static String hashName(FtpClient.checksum algorithm){
+
+		if (algorithm == FtpClient.checksum.CRC32){
+			return "CRC32";
+		}
+		return algorithm == FtpClient.checksum.MD5 ? "MD5" : "SHA-256";
+	}
+
+	/**
+	 * Helping method that gives the old style command asking for a checksum of an algorithm
+	 */
+	private static String legacyCommand(FtpClient.checksum algorithm){
+
+		if (algorithm == FtpClient.checksum.CRC32){
+			return "XCRC";
+		}
+		return algorithm == FtpClient.checksum.MD5 ? "XMD5" : "XSHA256";
+	}
+
+	/**
+	 * Helping method that looks for a hex checksum of the given length in a successful reply
+	 */
+	private static String findHex(FTPReply reply, int length){
+
+		if (!reply.isSuccessCode()){
+			return null;
+		}
+		for (String message : reply.getMessages()){
+			for (String token : message.trim().split("\\s+")){
+				if (token.length() == length && token.matches("[0-9a-fA-F]+")){
+					return token.toLowerCase();
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,236 @@
+package org.ftp.simpleclient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Learns which kind of data connection, passive or active, works best with a server. Every FtpClient
+ * of the JVM talking to the same host:port reports how long its data connections took to be set
+ * up, from the PASV or PORT command to the first byte that could go through, and which ones failed.
+ * Passive is used until it turns out slow, then active is tried and the fastest of both is kept,
+ * trying the other one now and then in case things changed. A mode that fails is quarantined for a
+ * while, longer each time it fails again, so it does not keep costing timeouts.
+ *
+ * ftp4j has no EPSV, passive connections always use PASV
+ *
+ */
+public class DataConnectionStrategy {
+
+	/**
+	 * A logger object
+	 */
+	private static final Logger logger = Logger.getLogger(DataConnectionStrategy.class);
+
+	/**
+	 * The strategy of each server, by host:port
+	 */
+	private static final ConcurrentMap<String, DataConnectionStrategy> SERVERS = new ConcurrentHashMap<String, DataConnectionStrategy>();
+	/**
+	 * Passive connections slower than this on average make active ones worth a try
+	 */
+	private static final long SLOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+	/**
+	 * Every so many connections the mode not in use is tried again
+	 */
+	private static final int EXPLORE_EVERY = 100;
+	/**
+	 * First quarantine of a failing mode, doubled on each failure in a row
+	 */
+	private static final long QUARANTINE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	/**
+	 * Longest quarantine
+	 */
+	private static final long MAX_QUARANTINE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	/**
+	 * What is known of one of the modes
+	 */
+	private static class Mode {
+
+		private final String name;
+		/**
+		 * Setup times of the connections that worked
+		 */
+		private final LatencyHistogram setupTimes = new LatencyHistogram();
+		/**
+		 * Time lost in the connections that failed
+		 */
+		private final LatencyHistogram failureTimes = new LatencyHistogram();
+		/**
+		 * Moving average of the recent setup times in nanoseconds, -1 if none worked yet
+		 */
+		private double average = -1;
+		/**
+		 * Failures since the last connection that worked
+		 */
+		private int failuresInRow = 0;
+		/**
+		 * Until when it is not used, from System.currentTimeMillis
+		 */
+		private long quarantinedUntil = 0;
+
+		Mode(String name){
+			this.name = name;
+		}
+	}
+
+	/**
+	 * host:port of the server
+	 */
+	private final String server;
+	private final Mode passive = new Mode("passive");
+	private final Mode active = new Mode("active");
+	/**
+	 * Connections chosen so far
+	 */
+	private long chosen = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param	server		host:port of the server
+	 */
+	private DataConnectionStrategy(String server){
+		this.server = server;
+	}
+
+	/**
+	 * Gives the strategy of a server, with nothing learnt the first time
+	 *
+	 * @param	host	The FTP host address
+	 * @param	port	The FTP port
+	 *
+	 * @return	The strategy of the server
+	 */
+	public static DataConnectionStrategy forServer(String host, int port){
+
+		String key = host.toLowerCase() + ":" + port;
+		DataConnectionStrategy strategy = SERVERS.get(key);
+		if (strategy == null){
+			DataConnectionStrategy created = new DataConnectionStrategy(key);
+			strategy = SERVERS.putIfAbsent(key, created);
+			if (strategy == null){
+				strategy = created;
+			}
+		}
+		return strategy;
+	}
+
+	/**
+	 * Chooses the mode of the next data connection
+	 *
+	 * @return	<code>true</code> for passive, <code>false</code> for active
+	 */
+	public synchronized boolean choosePassive(){
+
+		long now = System.currentTimeMillis();
+		boolean passiveUsable = this.passive.quarantinedUntil <= now;
+		boolean activeUsable = this.active.quarantinedUntil <= now;
+		if (!passiveUsable && !activeUsable){
+			//the one back first
+			return this.passive.quarantinedUntil <= this.active.quarantinedUntil;
+		}
+		if (!activeUsable){
+			return true;
+		}
+		if (!passiveUsable){
+			return false;
+		}
+		boolean best;
+		if (this.passive.average < 0){
+			best = true;
+		}
+		else if (this.active.average < 0){
+			best = this.passive.average <= SLOW_NANOS;
+		}
+		else{
+			best = this.passive.average <= this.active.average;
+		}
+		//the other mode is tried now and then, once there is a reason to look at it
+		this.chosen++;
+		if (this.chosen % EXPLORE_EVERY == 0 && (!best || this.active.average >= 0)){
+			return !best;
+		}
+		return best;
+	}
+
+	/**
+	 * Records a data connection that was set up
+	 *
+	 * @param	passive		<code>true</code> if it was passive
+	 * @param	nanos		How long it took, from PASV or PORT
+	 */
+	public synchronized void completed(boolean passive, long nanos){
+
+		Mode mode = passive ? this.passive : this.active;
+		mode.setupTimes.record(nanos);
+		mode.average = mode.average < 0 ? nanos : mode.average * 0.8 + nanos * 0.2;
+		if (mode.failuresInRow > 0 || mode.quarantinedUntil > 0){
+			logger.info("Data connections in " + mode.name + " mode to " + this.server + " work again");
+		}
+		mode.failuresInRow = 0;
+		mode.quarantinedUntil = 0;
+	}
+
+	/**
+	 * Records a data connection that could not be set up, quarantining its mode
+	 *
+	 * @param	passive		<code>true</code> if it was passive
+	 * @param	nanos		Time lost, from PASV or PORT to the failure
+	 */
+	public synchronized void failed(boolean passive, long nanos){
+
+		Mode mode = passive ? this.passive : this.active;
+		mode.failureTimes.record(nanos);
+		mode.failuresInRow++;
+		long quarantine = Math.min(QUARANTINE_MILLIS << Math.min(mode.failuresInRow - 1, 20), MAX_QUARANTINE_MILLIS);
+		mode.quarantinedUntil = System.currentTimeMillis() + quarantine;
+		logger.warn("Data connection in " + mode.name + " mode to " + this.server + " failed after " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms, not used for " + TimeUnit.MILLISECONDS.toSeconds(quarantine) + " s");
+	}
+
+	/**
+	 * Forgets everything learnt, passive is used again as at first
+	 */
+	public synchronized void reset(){
+
+		this.passive.average = -1;
+		this.passive.failuresInRow = 0;
+		this.passive.quarantinedUntil = 0;
+		this.active.average = -1;
+		this.active.failuresInRow = 0;
+		this.active.quarantinedUntil = 0;
+	}
+
+	/**
+	 * @param	passive		<code>true</code> for passive, <code>false</code> for active
+	 *
+	 * @return	The setup times of the connections of the mode that worked
+	 */
+	public LatencyHistogram getSetupTimes(boolean passive){
+		return passive ? this.passive.setupTimes : this.active.setupTimes;
+	}
+
+	/**
+	 * @param	passive		<code>true</code> for passive, <code>false</code> for active
+	 *
+	 * @return	The time lost in the connections of the mode that failed, timeouts included
+	 */
+	public LatencyHistogram getFailureTimes(boolean passive){
+		return passive ? this.passive.failureTimes : this.active.failureTimes;
+	}
+
+	/**
+	 * @param	passive		<code>true</code> for passive, <code>false</code> for active
+	 *
+	 * @return	<code>true</code> if the mode is not being used after failing
+	 */
+	public synchronized boolean isQuarantined(boolean passive){
+		return (passive ? this.passive : this.active).quarantinedUntil > System.currentTimeMillis();
+	}
+}
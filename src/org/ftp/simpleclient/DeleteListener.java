@@ -0,0 +1,30 @@
+package org.ftp.simpleclient;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Receives the progress of a recursive delete, one call per entry. Calls may come from several
+ * delete threads at once
+ *
+ */
+public interface DeleteListener {
+
+	/**
+	 * Called when an entry has been removed from the FTP server
+	 *
+	 * @param	path		The path of the entry, relative to the directory being deleted
+	 *
+	 * @param	directory	If true the entry was a directory
+	 */
+	void deleted(String path, boolean directory);
+
+	/**
+	 * Called when an entry could not be removed, the delete goes on with the rest
+	 *
+	 * @param	path		The path of the entry, relative to the directory being deleted
+	 *
+	 * @param	error		Why it could not be removed
+	 */
+	void failed(String path, Exception error);
+}
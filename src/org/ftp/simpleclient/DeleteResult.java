@@ -0,0 +1,139 @@
+package org.ftp.simpleclient;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Outcome of a recursive delete: how many files and directories were removed and the entries that
+ * could not be, with the reason. Entries can be added from several delete threads at once, and the
+ * counters can be read while the delete is still running
+ *
+ */
+public class DeleteResult {
+
+	/**
+	 * Number of files removed
+	 */
+	private int filesDeleted;
+	/**
+	 * Number of directories removed
+	 */
+	private int directoriesDeleted;
+	/**
+	 * The entries that could not be removed, by relative path
+	 */
+	private final Map<String, Exception> failures;
+	/**
+	 * Who is told about every entry, may be null
+	 */
+	private final DeleteListener listener;
+	/**
+	 * Time when the delete started, in milliseconds
+	 */
+	private final long started;
+	/**
+	 * Time spent in the whole delete, in milliseconds
+	 */
+	private long elapsed;
+
+	/**
+	 * Constructor, starts counting the time spent
+	 *
+	 * @param	listener	Who is told about every entry, null for nobody
+	 */
+	public DeleteResult(DeleteListener listener){
+
+		this.filesDeleted = 0;
+		this.directoriesDeleted = 0;
+		this.failures = new LinkedHashMap<String, Exception>();
+		this.listener = listener;
+		this.started = System.currentTimeMillis();
+		this.elapsed = 0;
+	}
+
+	/**
+	 * Records an entry removed
+	 *
+	 * @param	path		The path of the entry, relative to the directory being deleted
+	 *
+	 * @param	directory	If true the entry was a directory
+	 */
+	public void addDeleted(String path, boolean directory){
+
+		synchronized (this) {
+			if (directory){
+				this.directoriesDeleted++;
+			}
+			else{
+				this.filesDeleted++;
+			}
+		}
+		if (this.listener != null){
+			this.listener.deleted(path, directory);
+		}
+	}
+
+	/**
+	 * Records an entry that could not be removed
+	 *
+	 * @param	path		The path of the entry, relative to the directory being deleted
+	 *
+	 * @param	error		Why it could not be removed
+	 */
+	public void addFailed(String path, Exception error){
+
+		synchronized (this) {
+			this.failures.put(path, error);
+		}
+		if (this.listener != null){
+			this.listener.failed(path, error);
+		}
+	}
+
+	/**
+	 * Stops counting the time spent in the delete
+	 */
+	public synchronized void finish(){
+		this.elapsed = System.currentTimeMillis() - this.started;
+	}
+
+	/**
+	 * Tells if everything was removed
+	 *
+	 * @return	<code>true</code> if no entry failed
+	 */
+	public synchronized boolean isSuccessful(){
+		return this.failures.isEmpty();
+	}
+
+	/**
+	 * @return	A copy of the entries that could not be removed, by relative path
+	 */
+	public synchronized Map<String, Exception> getFailures(){
+		return Collections.unmodifiableMap(new LinkedHashMap<String, Exception>(this.failures));
+	}
+
+	public synchronized int getFilesDeleted() {
+		return filesDeleted;
+	}
+
+	public synchronized int getDirectoriesDeleted() {
+		return directoriesDeleted;
+	}
+
+	public synchronized int getFailed() {
+		return failures.size();
+	}
+
+	public synchronized long getElapsed() {
+		return elapsed;
+	}
+
+	public synchronized String toString(){
+		return this.filesDeleted + " files and " + this.directoriesDeleted + " directories deleted, " + this.failures.size() + " failed in " + this.elapsed + " ms";
+	}
+}
@@ -0,0 +1,205 @@
+package org.ftp.simpleclient;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Packs the files of a local directory into a zip stream and unpacks such a stream back into
+ * files, so a directory of many small files travels in a single data connection. Nothing is
+ * written to a temporary file, the stream goes straight from or to the FTP transfer.
+ *
+ * The optional manifest is a text file with one line per file: name, size and modification date
+ * separated by tabs. It lets the unpacking side tell whether every file arrived whole
+ *
+ */
+class DirArchive {
+
+	/**
+	 * A logger object
+	 */
+	private static final Logger logger = Logger.getLogger(DirArchive.class);
+
+	/**
+	 * Appended to the name of the archive to get the name of its manifest
+	 */
+	static final String MANIFEST_SUFFIX = ".manifest";
+	/**
+	 * Size of the buffers used to copy the files
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Writes the given files of a directory to a zip stream, the stream is closed when done
+	 *
+	 * @param	dir			The local directory
+	 * @param	names		The names of the files to pack
+	 * @param	out			Where the archive is written
+	 * @param	manifest	Where a line per packed file is added, null if no manifest is wanted
+	 *
+	 * @return	The result of each file, a file that could not be opened is recorded as failed and left out
+	 *
+	 * @throws	IOException	If the archive could not be written, it is not complete then
+	 */
+	static List<TransferResult> pack(File dir, List<String> names, OutputStream out, StringBuilder manifest) throws IOException {
+
+		List<TransferResult> results = new ArrayList<TransferResult>(names.size());
+		ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+		//small files are what is packed, favour speed over ratio
+		zip.setLevel(Deflater.BEST_SPEED);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try {
+			for (String name : names){
+				long start = System.currentTimeMillis();
+				File file = new File(dir, name);
+				InputStream in;
+				try {
+					in = new FileInputStream(file);
+				}
+				catch (IOException e) {
+					logger.error("Could not open " + file + ", leaving it out of the archive");
+					results.add(new TransferResult(name, 0, e));
+					continue;
+				}
+				try {
+					ZipEntry entry = new ZipEntry(name);
+					entry.setTime(file.lastModified());
+					zip.putNextEntry(entry);
+					long size = copy(in, zip, buffer);
+					zip.closeEntry();
+					results.add(new TransferResult(name, size, System.currentTimeMillis() - start));
+					if (manifest != null){
+						manifest.append(name).append('\t').append(size).append('\t').append(file.lastModified()).append('\n');
+					}
+				}
+				finally {
+					in.close();
+				}
+			}
+			zip.finish();
+		}
+		finally {
+			zip.close();
+		}
+		return results;
+	}
+
+	/**
+	 * Reads a zip stream and writes each of its files to a local directory
+	 *
+	 * @param	in			The archive
+	 * @param	dir			The local directory
+	 * @param	expected	Size and date of each file by name as given by the manifest, null if there is none
+	 * @param	result		Where the result of each file is added
+	 *
+	 * @throws	IOException	If the archive could not be read, the files written so far are kept
+	 */
+	static void unpack(InputStream in, File dir, Map<String, long[]> expected, DirTransferResult result) throws IOException {
+
+		Map<String, long[]> missing = expected == null ? null : new HashMap<String, long[]>(expected);
+		ZipInputStream zip = new ZipInputStream(in);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		ZipEntry entry;
+		while ((entry = zip.getNextEntry()) != null){
+			long start = System.currentTimeMillis();
+			String name = entry.getName();
+			if (entry.isDirectory()){
+				continue;
+			}
+			//never write outside the destination directory
+			if (name.isEmpty() || name.contains("/") || name.contains("\\") || name.equals(".") || name.equals("..")){
+				logger.error("Skipping archive entry " + name + ", it is not a plain file name");
+				result.add(new TransferResult(name, 0, new IOException("Archive entry " + name + " is not a plain file name")));
+				continue;
+			}
+
+			File file = new File(dir, name);
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+			long size;
+			try {
+				size = copy(zip, out, buffer);
+			}
+			finally {
+				out.close();
+			}
+			long modified = entry.getTime();
+
+			long[] wanted = missing == null ? null : missing.remove(name);
+			if (wanted != null){
+				modified = wanted[1];
+				if (wanted[0] != size){
+					result.add(new TransferResult(name, System.currentTimeMillis() - start, new IOException("File " + name + " has " + size + " bytes, the manifest says " + wanted[0])));
+					continue;
+				}
+			}
+			if (modified >= 0){
+				file.setLastModified(modified);
+			}
+			result.add(new TransferResult(name, size, System.currentTimeMillis() - start));
+		}
+
+		if (missing != null){
+			for (String name : missing.keySet()){
+				result.add(new TransferResult(name, 0, new IOException("File " + name + " is in the manifest but not in the archive")));
+			}
+		}
+	}
+
+	/**
+	 * Parses a manifest written by pack
+	 *
+	 * @param	text	The contents of the manifest
+	 *
+	 * @return	Size and modification date of each file, by name
+	 */
+	static Map<String, long[]> parseManifest(String text){
+
+		Map<String, long[]> files = new HashMap<String, long[]>();
+		for (String line : text.split("\n")){
+			String[] fields = line.split("\t");
+			if (fields.length != 3){
+				continue;
+			}
+			try {
+				files.put(fields[0], new long[]{Long.parseLong(fields[1]), Long.parseLong(fields[2])});
+			}
+			catch (NumberFormatException e) {
+				logger.error("Ignoring broken manifest line: " + line);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Helping method that copies a stream into another
+	 *
+	 * @return	The number of bytes copied
+	 */
+	private static long copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+
+		long total = 0;
+		int read;
+		while ((read = in.read(buffer)) != -1){
+			out.write(buffer, 0, read);
+			total += read;
+		}
+		return total;
+	}
+}
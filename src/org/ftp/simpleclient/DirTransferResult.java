@@ -0,0 +1,131 @@
+package org.ftp.simpleclient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Aggregated outcome of a directory transfer, holds one TransferResult per file.
+ * Results can be added from several transfer threads at once
+ *
+ */
+public class DirTransferResult {
+
+	/**
+	 * The results for each file
+	 */
+	private final List<TransferResult> results;
+	/**
+	 * Time when the directory transfer started, in milliseconds
+	 */
+	private final long started;
+	/**
+	 * Time spent in the whole directory transfer, in milliseconds
+	 */
+	private long elapsed;
+
+	/**
+	 * Constructor, starts counting the time spent
+	 *
+	 */
+	public DirTransferResult(){
+
+		this.results = Collections.synchronizedList(new ArrayList<TransferResult>());
+		this.started = System.currentTimeMillis();
+		this.elapsed = 0;
+	}
+
+	/**
+	 * Adds the result of a file transfer
+	 *
+	 * @param	result		The result of the file transfer
+	 */
+	public void add(TransferResult result){
+		this.results.add(result);
+	}
+
+	/**
+	 * Stops counting the time spent in the directory transfer
+	 */
+	public void finish(){
+		this.elapsed = System.currentTimeMillis() - this.started;
+	}
+
+	/**
+	 * Tells if every file was transferred
+	 *
+	 * @return	<code>true</code> if no file failed
+	 */
+	public boolean isSuccessful(){
+		return getFailed() == 0;
+	}
+
+	/**
+	 * @return	The number of files transferred successfully
+	 */
+	public int getTransferred(){
+		int count = 0;
+		synchronized (this.results) {
+			for (TransferResult result : this.results){
+				if (result.isSuccess()){
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return	The number of files that could not be transferred
+	 */
+	public int getFailed(){
+		synchronized (this.results) {
+			return this.results.size() - getTransferred();
+		}
+	}
+
+	/**
+	 * @return	The total number of bytes transferred
+	 */
+	public long getBytes(){
+		long bytes = 0;
+		synchronized (this.results) {
+			for (TransferResult result : this.results){
+				bytes += result.getBytes();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * The aggregated transfer rate of the directory
+	 *
+	 * @return	Bytes per second, 0 if nothing was measured
+	 */
+	public double getBytesPerSecond(){
+		if (this.elapsed <= 0){
+			return 0;
+		}
+		return getBytes() * 1000.0 / this.elapsed;
+	}
+
+	/**
+	 * @return	A copy of the results of each file
+	 */
+	public List<TransferResult> getResults(){
+		synchronized (this.results) {
+			return new ArrayList<TransferResult>(this.results);
+		}
+	}
+
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	public String toString(){
+		return getTransferred() + " files transferred, " + getFailed() + " failed, " + getBytes() + " bytes in " + this.elapsed + " ms";
+	}
+}
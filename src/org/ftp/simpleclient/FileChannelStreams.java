@@ -0,0 +1,298 @@
+package org.ftp.simpleclient;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Streams over the FileChannel of a local file for the transfers of large files. ftp4j only takes
+ * streams and copies them into the data socket itself, so the bytes can not be handed from the
+ * file to the socket with transferTo/transferFrom. What can be saved is the work on the file side:
+ * uploads read the file through memory mapped windows, with no read call nor native buffer per
+ * chunk, and downloads gather the data in a large direct buffer taken from a shared pool and write
+ * it with few channel writes. Downloads only take a direct buffer once they pass the size of a
+ * small file, and never more than MAX_DIRECT_BUFFERS exist at once: direct memory is only given
+ * back when the GC collects the buffers, so when all are in use a small heap buffer is used instead
+ *
+ */
+class FileChannelStreams {
+
+	/**
+	 * Files smaller than this are read with a plain FileInputStream, mapping them costs more than it saves
+	 */
+	static final long MAPPING_THRESHOLD = 1024 * 1024;
+	/**
+	 * Size of the mapped windows of an upload
+	 */
+	private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+	/**
+	 * Size of the direct buffers of the downloads
+	 */
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	/**
+	 * Size of the heap buffers of small downloads, and of large ones when no direct buffer is left
+	 */
+	private static final int SMALL_BUFFER_SIZE = 64 * 1024;
+	/**
+	 * Most direct buffers allocated, all of them kept for reuse
+	 */
+	private static final int MAX_DIRECT_BUFFERS = 16;
+	/**
+	 * Direct buffers not in use, they are expensive to allocate and are only freed by the GC
+	 */
+	private static final Queue<ByteBuffer> BUFFERS = new ConcurrentLinkedQueue<ByteBuffer>();
+	/**
+	 * Direct buffers allocated so far
+	 */
+	private static final AtomicInteger DIRECT_BUFFERS = new AtomicInteger();
+
+	/**
+	 * Opens a local file to be uploaded
+	 *
+	 * @param	file	The local file
+	 *
+	 * @return	A stream with the contents of the file, mapped if the file is large
+	 *
+	 * @throws	IOException	If the file could not be opened
+	 */
+	static InputStream openInput(File file) throws IOException {
+
+		if (file.length() < MAPPING_THRESHOLD){
+			return new FileInputStream(file);
+		}
+		return new MappedInputStream(new RandomAccessFile(file, "r").getChannel());
+	}
+
+	/**
+	 * Opens a local file a download is written to
+	 *
+	 * @param	file	The local file
+	 * @param	append	If true the data goes after the current contents, otherwise the file is truncated
+	 *
+	 * @return	A buffered stream writing to the channel of the file, through a direct buffer once it is past MAPPING_THRESHOLD bytes
+	 *
+	 * @throws	IOException	If the file could not be opened
+	 */
+	static OutputStream openOutput(File file, boolean append) throws IOException {
+
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+		try {
+			if (append){
+				channel.position(channel.size());
+			}
+			else{
+				channel.truncate(0);
+			}
+		}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return new ChannelOutputStream(channel);
+	}
+
+	/**
+	 * Input stream reading a file through windows of it mapped in memory
+	 */
+	static class MappedInputStream extends InputStream {
+
+		private final FileChannel channel;
+		private final long size;
+		/**
+		 * Position in the file of the next byte to read
+		 */
+		private long position = 0;
+		/**
+		 * The window holding the next byte, null if it has to be mapped
+		 */
+		private MappedByteBuffer window;
+
+		MappedInputStream(FileChannel channel) throws IOException {
+
+			this.channel = channel;
+			this.size = channel.size();
+		}
+
+		public int read() throws IOException {
+
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+		}
+
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+
+			if (length == 0){
+				return 0;
+			}
+			if (this.position >= this.size){
+				return -1;
+			}
+			if (this.window == null || !this.window.hasRemaining()){
+				long count = Math.min(WINDOW_SIZE, this.size - this.position);
+				this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, this.position, count);
+			}
+			int read = Math.min(length, this.window.remaining());
+			this.window.get(buffer, offset, read);
+			this.position += read;
+			return read;
+		}
+
+		public long skip(long n) throws IOException {
+
+			long skipped = Math.max(0, Math.min(n, this.size - this.position));
+			this.position += skipped;
+			//the next window starts where the skip ends
+			this.window = null;
+			return skipped;
+		}
+
+		public int available() throws IOException {
+			return (int) Math.min(Integer.MAX_VALUE, this.size - this.position);
+		}
+
+		public void close() throws IOException {
+
+			//the mapping goes away with the window once the GC collects it
+			this.window = null;
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Output stream gathering the data in a buffer before writing it to a channel. It starts with a
+	 * small heap buffer and moves to a pooled direct buffer once the file is no longer small
+	 */
+	static class ChannelOutputStream extends OutputStream {
+
+		private final FileChannel channel;
+		private ByteBuffer buffer;
+		/**
+		 * Bytes written so far
+		 */
+		private long written = 0;
+
+		ChannelOutputStream(FileChannel channel){
+
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocate(SMALL_BUFFER_SIZE);
+		}
+
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		public void write(byte[] data, int offset, int length) throws IOException {
+
+			if (this.buffer == null){
+				throw new IOException("Stream closed");
+			}
+			this.written += length;
+			if (!this.buffer.isDirect() && this.written > MAPPING_THRESHOLD){
+				ByteBuffer direct = takeBuffer();
+				if (direct != null){
+					try {
+						drain();
+					}
+					catch (IOException e) {
+						giveBackBuffer(direct);
+						throw e;
+					}
+					this.buffer = direct;
+				}
+			}
+			while (length > 0){
+				int count = Math.min(length, this.buffer.remaining());
+				this.buffer.put(data, offset, count);
+				offset += count;
+				length -= count;
+				if (!this.buffer.hasRemaining()){
+					drain();
+				}
+			}
+		}
+
+		public void flush() throws IOException {
+
+			if (this.buffer != null){
+				drain();
+			}
+		}
+
+		public void close() throws IOException {
+
+			if (this.buffer == null){
+				return;
+			}
+			try {
+				drain();
+			}
+			finally {
+				giveBackBuffer(this.buffer);
+				this.buffer = null;
+				this.channel.close();
+			}
+		}
+
+		/**
+		 * Helping method that writes out what is in the buffer
+		 */
+		private void drain() throws IOException {
+
+			this.buffer.flip();
+			try {
+				while (this.buffer.hasRemaining()){
+					this.channel.write(this.buffer);
+				}
+			}
+			finally {
+				this.buffer.clear();
+			}
+		}
+	}
+
+	/**
+	 * Helping method that takes a direct buffer from the pool, allocating one if there are not
+	 * MAX_DIRECT_BUFFERS yet
+	 *
+	 * @return	The buffer, null if all of them are in use
+	 */
+	private static ByteBuffer takeBuffer(){
+
+		ByteBuffer buffer = BUFFERS.poll();
+		if (buffer != null){
+			return buffer;
+		}
+		while (true){
+			int allocated = DIRECT_BUFFERS.get();
+			if (allocated >= MAX_DIRECT_BUFFERS){
+				return null;
+			}
+			if (DIRECT_BUFFERS.compareAndSet(allocated, allocated + 1)){
+				return ByteBuffer.allocateDirect(BUFFER_SIZE);
+			}
+		}
+	}
+
+	/**
+	 * Helping method that gives a buffer back to the pool if it is a direct one
+	 */
+	private static void giveBackBuffer(ByteBuffer buffer){
+
+		if (buffer.isDirect()){
+			buffer.clear();
+			BUFFERS.offer(buffer);
+		}
+	}
+}
@@ -1,28 +1,75 @@
 package org.ftp.simpleclient;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
-import java.security.KeyManagementException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 
 import org.apache.log4j.Logger;
 
 import it.sauronsoftware.ftp4j.FTPAbortedException;
 import it.sauronsoftware.ftp4j.FTPClient;
+import it.sauronsoftware.ftp4j.FTPCommunicationListener;
+import it.sauronsoftware.ftp4j.FTPConnector;
+import it.sauronsoftware.ftp4j.FTPDataTransferListener;
 import it.sauronsoftware.ftp4j.FTPDataTransferException;
 import it.sauronsoftware.ftp4j.FTPException;
 import it.sauronsoftware.ftp4j.FTPFile;
 import it.sauronsoftware.ftp4j.FTPIllegalReplyException;
 import it.sauronsoftware.ftp4j.FTPListParseException;
+import it.sauronsoftware.ftp4j.connectors.DirectConnector;
 
 /**
  * @author Alejandro Villamarin
@@ -30,26 +77,67 @@ import it.sauronsoftware.ftp4j.FTPListParseException;
  * 
  * Basic functionalities of a very simple ftp client using ftp4j library
  * 
+ * A client can be shared by several threads once it is set up, connected and logged in: each
+ * operation runs on a session of its own (from the session pool, or from up to maxSessions opened
+ * by the client) and changes to the directories it works on itself, so callers never depend on
+ * each other's working directory. Settings are meant to be changed before the client is shared
+ * 
  */
 public class FtpClient {
 	
 	/**
 	 * A logger object 
 	 */
-	private static Logger logger;
+	private static final Logger logger = Logger.getLogger(FtpClient.class);
+	/**
+	 * Salt of the password hashes in the session keys, different on every run
+	 */
+	private static final byte[] PASSWORD_SALT = newSalt();
+	/**
+	 * Commands transferring data over the data connection opened by the PASV or PORT before them
+	 */
+	private static final Set<String> DATA_COMMANDS = new HashSet<String>(Arrays.asList("LIST", "MLSD", "NLST", "RETR", "STOR", "STOU", "APPE"));
+	/**
+	 * Extensions of files already compressed used unless setCompressedExtensions is called
+	 */
+	private static final Set<String> DEFAULT_COMPRESSED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+			"gz", "tgz", "zip", "bz2", "xz", "7z", "rar", "zst", "lz4", "z",
+			"jar", "war", "ear", "apk", "jpg", "jpeg", "png", "gif", "webp", "mp3", "mp4", "m4a", "ogg", "flac", "mkv", "avi", "mov",
+			"pdf", "docx", "xlsx", "pptx", "odt", "ods")));
 	/**
 	 * FTPClient object
 	 */
 	private FTPClient client;
+	/**
+	 * The FTPClient field as a session, used when there is no session pool
+	 */
+	private FtpSession ownSession;
+	/**
+	 * Tells whether the own session is in use by some thread right now
+	 */
+	private final AtomicBoolean ownSessionBusy = new AtomicBoolean(false);
+	/**
+	 * Sessions for the threads arriving while the own session is in use when there is no session
+	 * pool, created the first time it happens
+	 */
+	private FtpSessionPool overflowPool;
+	/**
+	 * Most sessions open at once for concurrent callers when there is no session pool, the own one included
+	 */
+	private volatile int maxSessions;
 	
 	/**
-	 * An array of TrustManager objects, used when bypassing SSL cert is required
+	 * SSLContext given by the user for FTPS/FTPES, null to use the one shared by every client with the same trust settings
+	 */
+	private SSLContext sslContext;
+	/**
+	 * Path of the trust store with the server certificates to trust, null for the one of the JDK
 	 */
-	TrustManager[] trustManager;
+	private String trustStore;
 	/**
-	 * A SSLContext object, only required when bypass is TRUE
+	 * Password of the trust store
 	 */
-	SSLContext sslContext;
+	private String trustStorePassword;
 	/**
 	 * Enum type for the type of secure connection, possible values are
 	 * FTP - The default value
@@ -63,10 +151,6 @@ public class FtpClient {
 	 * FTP server address
 	 */
 	private String host;
-	/**
-	 * A list used when listing directories
-	 */
-	private FTPFile[] list;
 	/**
 	 * FTP listening port
 	 */
@@ -90,15 +174,138 @@ public class FtpClient {
 	/**
 	 * Flag to indicate whether the FTPClient field is set up
 	 */
-	private boolean setup;
+	private volatile boolean setup;
 	/**
 	 * Flag to indicate whether connection is established or not
 	 */
-	private boolean connected;
+	private volatile boolean connected;
 	/**
 	 * Flag to indicate whether the client is logged in
 	 */
-	private boolean logged;
+	private volatile boolean logged;
+	/**
+	 * Optional pool of logged in sessions, when set every operation borrows a session from it
+	 * instead of using the FTPClient field
+	 */
+	private volatile FtpSessionPool sessionPool;
+	/**
+	 * The exception of the last operation of each thread that failed
+	 */
+	private final ThreadLocal<Exception> lastError = new ThreadLocal<Exception>();
+	/**
+	 * The FTPClient object each thread is transferring a file with right now, so the transfer can be aborted
+	 */
+	private final Map<Thread, FTPClient> activeTransfers = new ConcurrentHashMap<Thread, FTPClient>();
+	/**
+	 * Optional registry the timings of connections, commands and transfers are reported to
+	 */
+	private volatile FtpMetrics metrics;
+	/**
+	 * Smallest byte range worth downloading over its own session
+	 */
+	private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+	/**
+	 * Files per session that may be waiting to be transferred when walking a tree
+	 */
+	private static final int TREE_BATCH_SIZE = 64;
+	/**
+	 * Size of the pipe between the thread packing or unpacking an archive and the one transferring it
+	 */
+	private static final int PACK_BUFFER_SIZE = 256 * 1024;
+	/**
+	 * How many times and how often uploadFile and downloadFile try again a broken transfer
+	 */
+	private volatile RetryPolicy retryPolicy;
+	/**
+	 * Resume flag, if true uploadFile and downloadFile complete partial files instead of transferring them again
+	 */
+	private volatile boolean resume;
+	/**
+	 * Directions a directory can be synced
+	 * UPLOAD - From a local directory to the FTP server
+	 * DOWNLOAD - From the FTP server to a local directory
+	 */
+	public enum syncDirection{UPLOAD, DOWNLOAD}
+	/**
+	 * Ways a file can be compressed while it is transferred
+	 * NONE - Files travel as they are
+	 * MODE_Z - The server compresses the data connection (MODE Z), files are stored as they are. Uncompressed if the server does not support it
+	 * GZIP - The client gzips uploads, stored with a .gz suffix, and gunzips the .gz copy on download
+	 * AUTO - MODE_Z if the server supports it, GZIP otherwise
+	 */
+	public enum compression{NONE, MODE_Z, GZIP, AUTO}
+	/**
+	 * How files are compressed while transferred
+	 */
+	private compression compressionMode;
+	/**
+	 * Deflate level used by GZIP compression, 1 (fastest) to 9 (smallest)
+	 */
+	private int compressionLevel;
+	/**
+	 * Extensions (lowercase, no dot) of files that are already compressed and are transferred as they are.
+	 * Never modified, a new set replaces it so transfers running can read it without locking
+	 */
+	private volatile Set<String> compressedExtensions;
+	/**
+	 * Suffix of the files gzipped by the client
+	 */
+	private static final String GZIP_SUFFIX = ".gz";
+	/**
+	 * Bytes per second allowed to each transfer on its own, 0 for unlimited. Host and global limits
+	 * are set in RateLimiter.forHost and RateLimiter.global
+	 */
+	private volatile long transferRateLimit;
+	/**
+	 * Checksums that can be used to check a transferred file
+	 * NONE - Files are not checked
+	 * CRC32 - Asked to the server with HASH or XCRC
+	 * MD5 - Asked to the server with HASH or XMD5
+	 * SHA256 - Asked to the server with HASH or XSHA256
+	 * Downloads fall back to a sidecar file (file.crc32, file.md5, file.sha256) when the server can not tell
+	 */
+	public enum checksum{NONE, CRC32, MD5, SHA256}
+	/**
+	 * Checksum computed while files are transferred and compared with the one of the server copy
+	 */
+	private checksum checksumAlgorithm;
+	/**
+	 * If true uploads also write a sidecar file with the checksum of the file
+	 */
+	private boolean checksumSidecar;
+	/**
+	 * Kind of the data connections:
+	 * AUTO - Passive until it turns out slow or failing with the server, then whatever works best (see DataConnectionStrategy)
+	 * PASSIVE - Always passive, the client connects to the server
+	 * ACTIVE - Always active, the server connects to the client
+	 */
+	public enum dataConnection{AUTO, PASSIVE, ACTIVE}
+	/**
+	 * Kind of the data connections used
+	 */
+	private volatile dataConnection dataConnectionMode;
+	/**
+	 * Time in milliseconds to wait for a passive data connection to be accepted, 0 to wait for ever
+	 */
+	private volatile int dataConnectTimeout;
+	/**
+	 * Directory the sessions land in when they log in, relative remote paths start from it. Null until
+	 * a session has logged in or if the server does not tell it
+	 */
+	private volatile String homeDirectory;
+	/**
+	 * Time in milliseconds a source file must be newer than its destination copy to be synced again,
+	 * covers the minute precision of LIST dates
+	 */
+	private long syncTimeTolerance;
+	/**
+	 * Optional manifest of remote directory listings, used to skip the LIST of directories that did not change
+	 */
+	private RemoteManifest manifest;
+	/**
+	 * Optional in-memory cache of remote directory listings
+	 */
+	private ListingCache listingCache;
 	
 	/**
 	 * Constructor, sets up all the required fields with default values
@@ -106,14 +313,22 @@ public class FtpClient {
 	 */
 	public FtpClient(){
 		
-		FtpClient.logger = Logger.getLogger(FtpClient.class);
 		//set FTP as default connectionType
 		this.connectionType = secure.FTP;
 		this.bypass = false;
 		this.connected = false;
 		this.setup = false;
 		this.logged = false;
-		this.list = null;
+		this.retryPolicy = new RetryPolicy();
+		this.maxSessions = 4;
+		this.resume = false;
+		this.syncTimeTolerance = 60000;
+		this.compressionMode = compression.NONE;
+		this.compressionLevel = Deflater.BEST_SPEED;
+		this.checksumAlgorithm = checksum.NONE;
+		this.dataConnectionMode = dataConnection.AUTO;
+		this.dataConnectTimeout = 10000;
+		this.compressedExtensions = DEFAULT_COMPRESSED_EXTENSIONS;
 		
 	}
 	
@@ -130,7 +345,6 @@ public class FtpClient {
 	 */
 	public FtpClient(String host, int port, String user, String password, secure connType, boolean flag){
 		
-		FtpClient.logger = Logger.getLogger(FtpClient.class);
 		this.host = host;
 		this.port = port;
 		this.user = user;
@@ -140,13 +354,23 @@ public class FtpClient {
 		this.connected = false;
 		this.setup = false;
 		this.logged = false;
+		this.retryPolicy = new RetryPolicy();
+		this.maxSessions = 4;
+		this.resume = false;
+		this.syncTimeTolerance = 60000;
+		this.compressionMode = compression.NONE;
+		this.compressionLevel = Deflater.BEST_SPEED;
+		this.checksumAlgorithm = checksum.NONE;
+		this.dataConnectionMode = dataConnection.AUTO;
+		this.dataConnectTimeout = 10000;
+		this.compressedExtensions = DEFAULT_COMPRESSED_EXTENSIONS;
 			
 	}
 	
 	/**
 	 * Initializes the FTPclient field and the rest of associated fields required 
-	 * Also it prepares the client for bypassing the SSL certificate checking procedure
-	 * if required
+	 * Also it picks the SSL context for FTPS/FTPES: the one given by the user or the one shared by
+	 * every client with the same trust settings (bypass or trust store)
 	 * 
 	 * @return	True if everything was set up correctly
 	 */
@@ -154,68 +378,317 @@ public class FtpClient {
 		
 		//initialize the FTPClient object
 		this.client = new FTPClient();
+		this.ownSession = new FtpSession(this.client, getSessionKey());
+		this.sslSocketFactory = null;
+		
+		
+		//TLS contexts are shared, so sessions are resumed across clients and connections
+		if (this.connectionType != secure.FTP){
+			try {
+				SSLContext context = this.sslContext;
+				if (context == null){
+					context = SslContexts.get(this.bypass, this.trustStore, this.trustStorePassword);
+				}
+				this.sslSocketFactory = context.getSocketFactory();
+			}
+			catch (GeneralSecurityException e) {
+				fail("Could not set up the SSL context", e);
+				this.setup = false;
+				return false;
+			}
+			catch (IOException e) {
+				fail("Could not read the trust store " + this.trustStore, e);
+				this.setup = false;
+				return false;
+			}
+		}
+		configureClient(this.client);
+		this.setup = true;
+		logger.info("FTPClient setup completed successfully.");
+		return true;
+	}
+	
+	/**
+	 * Applies the connection type and the SSL socket factory (if any) to the given FTPClient object
+	 * 
+	 * @param	ftpClient	The FTPClient object to configure
+	 */
+	private void configureClient(FTPClient ftpClient){
+		
 		//Set connection type
 		if (this.connectionType == secure.FTP){
-			client.setSecurity(FTPClient.SECURITY_FTP);
+			ftpClient.setSecurity(FTPClient.SECURITY_FTP);
 		}
 		else{
 			if (this.connectionType == secure.FTPS){
-				client.setSecurity(FTPClient.SECURITY_FTPS);
+				ftpClient.setSecurity(FTPClient.SECURITY_FTPS);
 			}
 			else{
 				if (this.connectionType == secure.FTPES){
-					client.setSecurity(FTPClient.SECURITY_FTPES);
+					ftpClient.setSecurity(FTPClient.SECURITY_FTPES);
 				}
 			}
 		}
+		if (this.connectionType != secure.FTP){
+			SSLSocketFactory factory = this.sslSocketFactory != null ? this.sslSocketFactory : (SSLSocketFactory) SSLSocketFactory.getDefault();
+			//data connections resume the TLS session of the control connection
+			ftpClient.setSSLSocketFactory(new TimedSSLSocketFactory(new SessionReuseSSLSocketFactory(factory, this.host, this.port), this));
+		}
+		//machine readable listings when the server has them, the LIST parsers otherwise
+		ftpClient.setMLSDPolicy(FTPClient.MLSD_IF_SUPPORTED);
+		CommandTimer timer = new CommandTimer();
+		ftpClient.addCommunicationListener(timer);
+		ftpClient.setConnector(new DataConnector(ftpClient.getConnector(), timer));
+	}
+	
+	/**
+	 * Makes a session opened by another client of the same pool report its commands and data
+	 * connections to this client, and use its data connection timeout. The TLS settings the
+	 * session was opened with are kept, they can only change with a new connection
+	 * 
+	 * @param	ftpClient	The FTPClient object of the session
+	 */
+	void bindSession(FTPClient ftpClient){
 		
+		FTPCommunicationListener[] listeners = ftpClient.getCommunicationListeners();
+		for (int i=0; i<listeners.length; i++){
+			if (listeners[i] instanceof CommandTimer){
+				if (((CommandTimer) listeners[i]).owner() == this){
+					return;
+				}
+				ftpClient.removeCommunicationListener(listeners[i]);
+			}
+		}
+		FTPConnector connector = ftpClient.getConnector();
+		if (connector instanceof DataConnector){
+			connector = ((DataConnector) connector).connector;
+		}
+		CommandTimer timer = new CommandTimer();
+		ftpClient.addCommunicationListener(timer);
+		ftpClient.setConnector(new DataConnector(connector, timer));
+	}
+	
+	/**
+	 * Helping method that sets the kind of the next data connection of a session
+	 * 
+	 * @param	ftpClient	The FTPClient object of the session
+	 */
+	private void chooseDataConnection(FTPClient ftpClient){
 		
-		//check if we need to bypass the SSL cert
-		if (this.bypass){
-			//Declare our own X509 trust manager 
-			this.trustManager = new TrustManager[] {
-					//Initialize the array with our own implementation of the X509TrustManager
-					new X509TrustManager() {
-						
-						public X509Certificate[] getAcceptedIssuers() {
-							return null;
-						}
-						public void checkClientTrusted(X509Certificate[] certs, String authType) {
-							
-						}
-						/* This is the method that really checks the certitficate */
-						public void checkServerTrusted(X509Certificate[] certs, String authType) {
-							logger.info("Bypassing X509 SSL cert procedure, don't do this at home.");
-						}
-			} };
-			
-			try {
-				
-				//initialize SSL context
-				sslContext = SSLContext.getInstance("SSL");
-				sslContext.init(null, trustManager, new SecureRandom());
-				sslSocketFactory = sslContext.getSocketFactory();
-				client.setSSLSocketFactory(sslSocketFactory);
-				this.setup = true;
-				logger.info("FTPClient setup completed successfully.");
-				return true;
-			} 
-			catch (NoSuchAlgorithmException e) {
-				logger.error("SSL was not found as algorithm");
-				e.printStackTrace();
-				this.setup = false;
-				return false;
-			} 
-			catch (KeyManagementException e) {
-				logger.error("There was a problem with the key manager");
-				e.printStackTrace();
-				this.setup = false;
-				return false;
+		dataConnection mode = this.dataConnectionMode;
+		if (mode == dataConnection.AUTO){
+			ftpClient.setPassive(DataConnectionStrategy.forServer(this.host, this.port).choosePassive());
+		}
+		else{
+			ftpClient.setPassive(mode == dataConnection.PASSIVE);
+		}
+	}
+	
+	/**
+	 * Helping method that gives what the FTP server is known to support, shared by every client of it
+	 * 
+	 * @return	The capabilities of the server
+	 */
+	private ServerCapabilities capabilities(){
+		return ServerCapabilities.forServer(this.host, this.port);
+	}
+	
+	/**
+	 * Helping method that connects an FTPClient object to the FTP server, timing it for the metrics
+	 * 
+	 * @param	ftpClient	The FTPClient object
+	 */
+	private void connectClient(FTPClient ftpClient) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException {
+		
+		long start = System.nanoTime();
+		ftpClient.connect(this.host, this.port);
+		if (this.metrics != null){
+			this.metrics.connected(System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * Helping method that logs an FTPClient object in the FTP server, timing it for the metrics
+	 * 
+	 * @param	ftpClient	The FTPClient object
+	 * 
+	 * @return	The directory the session landed in, null if the server does not tell it
+	 */
+	private String loginClient(FTPClient ftpClient) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException {
+		
+		long start = System.nanoTime();
+		ftpClient.login(this.user, this.password);
+		if (this.metrics != null){
+			this.metrics.loggedIn(System.nanoTime() - start);
+		}
+		String home;
+		try {
+			home = ftpClient.currentDirectory();
+		}
+		catch (FTPException e) {
+			logger.warn("Server " + this.host + " does not tell the login directory, relative paths are sent as given");
+			return null;
+		}
+		this.homeDirectory = home;
+		return home;
+	}
+	
+	/**
+	 * Opens a new connected and logged in session, used by the session pool
+	 * 
+	 * @param	key		The pool key of the session
+	 * 
+	 * @return	The session, ready to be used
+	 */
+	FtpSession openSession(String key) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException {
+		
+		if (!this.setup){
+			throw new IllegalStateException("FTPclient field must be set up before connecting. Use setupClient method first.");
+		}
+		FTPClient client = new FTPClient();
+		configureClient(client);
+		connectClient(client);
+		String home;
+		try {
+			home = loginClient(client);
+		}
+		catch (FTPException e) {
+			client.abruptlyCloseCommunication();
+			throw e;
+		}
+		FtpSession session = new FtpSession(client, key);
+		session.setHomeDirectory(home);
+		session.setWorkingDirectory(home);
+		return session;
+	}
+	
+	/**
+	 * The key identifying the sessions this client can share with others in a pool. It holds a hash
+	 * of the password, so a client with wrong credentials never gets a session somebody else logged in
+	 * 
+	 * @return	A key made of host:port:user:connectionType:passwordHash
+	 */
+	String getSessionKey(){
+		return getServerKey() + ":" + passwordHash(this.password);
+	}
+	
+	/**
+	 * Helping method that gives the key of the server and account, without the password
+	 * 
+	 * @return	A key made of host:port:user:connectionType
+	 */
+	private String getServerKey(){
+		return this.host + ":" + this.port + ":" + this.user + ":" + this.connectionType;
+	}
+	
+	/**
+	 * Helping method that gives a random salt for the password hashes
+	 */
+	private static byte[] newSalt(){
+		
+		byte[] salt = new byte[16];
+		new SecureRandom().nextBytes(salt);
+		return salt;
+	}
+	
+	/**
+	 * Helping method that hashes a password with a salt chosen when the JVM starts, so the pool keys
+	 * can be logged without giving the password away
+	 * 
+	 * @param	password	The password
+	 * 
+	 * @return	The first 16 hex digits of the salted SHA-256 of the password
+	 */
+	private static String passwordHash(String password){
+		
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(PASSWORD_SALT);
+			byte[] hash = digest.digest((password == null ? "" : password).getBytes(StandardCharsets.UTF_8));
+			StringBuilder builder = new StringBuilder();
+			for (int i=0; i<8; i++){
+				builder.append(String.format("%02x", hash[i] & 0xff));
 			}
+			return builder.toString();
 		}
-		this.setup = true;
-		System.out.println("INFO: FTPClient setup completed successfully.");
-		return true;
+		catch (NoSuchAlgorithmException e) {
+			//every JDK has it
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Gets a session to work with, borrowed from the session pool if there is one. Otherwise the
+	 * session wrapping this client's own FTPClient object, or if another thread is using it one
+	 * of the overflow sessions, so concurrent callers never share a session
+	 * 
+	 * @return	The session to use, must be given back with releaseSession
+	 */
+	private FtpSession acquireSession() throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException {
+		
+		FtpSessionPool pool = this.sessionPool;
+		if (pool != null){
+			return pool.borrowSession(this);
+		}
+		if (this.ownSessionBusy.compareAndSet(false, true)){
+			return this.ownSession;
+		}
+		return getOverflowPool().borrowSession(this);
+	}
+	
+	/**
+	 * Gives back a session obtained with acquireSession
+	 * 
+	 * @param	session		The session, may be null if acquiring it failed
+	 * 
+	 * @param	broken		If true the session is discarded instead of being reused, the own session is reconnected by recoverSession instead
+	 */
+	private void releaseSession(FtpSession session, boolean broken){
+		
+		if (session == null){
+			return;
+		}
+		if (session == this.ownSession){
+			this.ownSessionBusy.set(false);
+			return;
+		}
+		FtpSessionPool pool = this.sessionPool != null ? this.sessionPool : getOverflowPool();
+		if (broken){
+			pool.invalidateSession(session);
+		}
+		else{
+			pool.returnSession(session);
+		}
+	}
+	
+	/**
+	 * Helping method that closes the overflow sessions, if any
+	 */
+	private void closeOverflowPool(){
+		
+		FtpSessionPool pool;
+		synchronized (this) {
+			pool = this.overflowPool;
+			this.overflowPool = null;
+		}
+		if (pool != null){
+			pool.close();
+		}
+	}
+	
+	/**
+	 * Helping method that gives the pool of overflow sessions, created the first time it is needed
+	 * 
+	 * @return	The pool
+	 */
+	private synchronized FtpSessionPool getOverflowPool(){
+		
+		if (this.overflowPool == null){
+			int size = Math.max(1, this.maxSessions - 1);
+			this.overflowPool = new FtpSessionPool(size, size, 60000);
+			logger.info("Opening up to " + size + " more sessions for concurrent callers");
+		}
+		return this.overflowPool;
 	}
 	
 	/**
@@ -230,8 +703,15 @@ public class FtpClient {
 			try {
 				//Check if we are connected
 				if (this.setup){
-					this.client.connect(this.host, this.port);
-					System.out.println("INFO: Connection with server " + this.host + " at " + this.port + " established correctly");
+					//when pooling, make sure a session can be opened and leave it ready in the pool
+					if (this.sessionPool != null){
+						this.sessionPool.returnSession(this.sessionPool.borrowSession(this));
+					}
+					else{
+						connectClient(this.client);
+						this.ownSession.setWorkingDirectory(null);
+					}
+					logger.info("Connection with server " + this.host + " at " + this.port + " established correctly");
 					this.connected = true;
 					logger.info("FTPClient connection completed successfully.");
 					return true;
@@ -242,20 +722,16 @@ public class FtpClient {
 				}
 				
 			} catch (IllegalStateException e) {	
-				logger.error("Could not connect to the FTP server. Aborting");
-				e.printStackTrace();	
+				fail("Could not connect to the FTP server. Aborting", e);	
 			} 
 			catch (IOException e) {
-				logger.error("Could not connect to the FTP server. Aborting");
-				e.printStackTrace();
+				fail("Could not connect to the FTP server. Aborting", e);
 			} 
 			catch (FTPIllegalReplyException e) {
-				logger.error("Could not connect to the FTP server. Aborting");
-				e.printStackTrace();
+				fail("Could not connect to the FTP server. Aborting", e);
 			} 
 			catch (FTPException e) {
-				logger.error("Could not connect to the FTP server. Aborting");
-				e.printStackTrace();
+				fail("Could not connect to the FTP server. Aborting", e);
 			}
 		}
 		else{
@@ -278,9 +754,14 @@ public class FtpClient {
 		try {
 			//Check if we are connected
 			if (this.connected){
-				this.client.disconnect(true);
+				//pooled sessions are owned by the pool, they are closed with FtpSessionPool.close
+				if (this.sessionPool == null){
+					this.client.disconnect(true);
+				}
+				closeOverflowPool();
 				logger.info("Disconnection from server " + this.host + " at " + this.port + " terminated correctly");
 				this.connected = false;
+				this.logged = false;
 				logger.info("FTPClient disconnected successfully.");
 				return true;
 			}
@@ -291,23 +772,19 @@ public class FtpClient {
 				
 		} 
 		catch (IllegalStateException e) {
-			logger.error("Could not disconnect from server " + this.host);
-			e.printStackTrace();
+			fail("Could not disconnect from server " + this.host, e);
 			return false;
 		}
 		catch (IOException e) {
-			logger.error("Could not disconnect from server " + this.host);
-			e.printStackTrace();
+			fail("Could not disconnect from server " + this.host, e);
 			return false;
 		}
 		catch (FTPIllegalReplyException e) {
-			logger.error("Could not disconnect from server " + this.host);
-			e.printStackTrace();
+			fail("Could not disconnect from server " + this.host, e);
 			return false;
 		}
 		catch (FTPException e) {
-			logger.error("Could not disconnect from server " + this.host);
-			e.printStackTrace();
+			fail("Could not disconnect from server " + this.host, e);
 			return false;
 		}
 		
@@ -325,7 +802,12 @@ public class FtpClient {
 
 			try {
 				if (this.connected){
-					this.client.login(this.user, this.password);
+					//pooled sessions are logged in when they are opened
+					if (this.sessionPool == null){
+						String home = loginClient(this.client);
+						this.ownSession.setHomeDirectory(home);
+						this.ownSession.setWorkingDirectory(home);
+					}
 					logger.info("Logged in server " + this.host + " at " + this.port + " successfully");
 					this.logged = true;
 					logger.info("FTPClient login completed successfully.");
@@ -338,20 +820,16 @@ public class FtpClient {
 				
 			} 
 			catch (IllegalStateException e) {
-				logger.error("There was an error trying to login to the server. Aborting");
-				e.printStackTrace();
+				fail("There was an error trying to login to the server. Aborting", e);
 			}
 			catch (IOException e) {
-				logger.error("There was an error trying to login to the server. Aborting");
-				e.printStackTrace();
+				fail("There was an error trying to login to the server. Aborting", e);
 			}
 			catch (FTPIllegalReplyException e) {
-				logger.error("There was an error trying to login to the server. Aborting");
-				e.printStackTrace();
+				fail("There was an error trying to login to the server. Aborting", e);
 			} 
 			catch (FTPException e) {
-				logger.error("There was an error trying to login to the server. Aborting");
-				e.printStackTrace();
+				fail("There was an error trying to login to the server. Aborting", e);
 			}
 		}
 		else{
@@ -392,17 +870,14 @@ public class FtpClient {
 				
 				if (!names.isEmpty()){
 					
+					FtpSession session = null;
+					boolean broken = false;
 					//change to destination directory in ftp
 					try {
-						String dir = client.currentDirectory();
-						logger.info("Current directory is " + dir);
-						
+						session = acquireSession();
+						FTPClient client = session.getClient();
 						//change directory only if necessary
-						if (!this.checkSameFolder(dir, destDir)){
-							logger.info("Changing directory to  " + destDir);
-							client.changeDirectory(destDir);
-							logger.info("Directory changed successfully, proceding to upload");
-						}
+						changeWorkingDirectory(session, destDir);
 					
 						Iterator<String> iterator = names.iterator();
 						//For each file encountered, create a fullpath and upload it
@@ -412,44 +887,49 @@ public class FtpClient {
 							String name = iterator.next();
 							String path = sourceDir + "/" + name;
 							File file = new File(path);
-							this.client.upload(file);
-							logger.info("File " + name  + " uploaded successfully!");
+							transferFile(client, file, file.getName(), true, false);
+							if (logger.isInfoEnabled()){
+								logger.info("File " + name  + " uploaded successfully!");
+							}
 						}
 						
 						logger.info("All files uploaded successfully to " + destDir );
+						forgetDirectory(session.getWorkingDirectory());
 						return true;
 						
 					} 
 					catch (IllegalStateException e) {
-						logger.error("Could not upload file to " + destDir + " OR could not change directory to " + destDir);
-						e.printStackTrace();
+						broken = true;
+						fail("Could not upload file to " + destDir + " OR could not change directory to " + destDir, e);
 						return false;
 					} 
 					catch (IOException e) {
-						logger.error("Could not upload file to " + destDir + " OR could not change directory to " + destDir);
-						e.printStackTrace();
+						broken = true;
+						fail("Could not upload file to " + destDir + " OR could not change directory to " + destDir, e);
 						return false;
 					} 
 					catch (FTPIllegalReplyException e) {
-						logger.error("Could not upload file to " + destDir + " OR could not change directory to " + destDir);
-						e.printStackTrace();
+						broken = true;
+						fail("Could not upload file to " + destDir + " OR could not change directory to " + destDir, e);
 						return false;
 					} 
 					catch (FTPException e) {
-						logger.error("Could not upload file to " + destDir + " OR could not change directory to " + destDir);
-						e.printStackTrace();
+						fail("Could not upload file to " + destDir + " OR could not change directory to " + destDir, e);
 						return false;
 					}
 					catch (FTPDataTransferException e) {
-						logger.error("Could not upload file to " + destDir);
-						e.printStackTrace();
+						broken = true;
+						fail("Could not upload file to " + destDir, e);
 						return false;
 					} 
 					catch (FTPAbortedException e) {
-						logger.error("Could not upload file to " + destDir);
-						e.printStackTrace();
+						broken = true;
+						fail("Could not upload file to " + destDir, e);
 						return false;							
 					}
+					finally {
+						releaseSession(session, broken);
+					}
 				}
 			}	
 			else{
@@ -462,6 +942,37 @@ public class FtpClient {
 		return false;
 	}
 	
+	/**
+	 * Uploads the set of files within the source directory to the destination directory, spreading
+	 * them across several logged in sessions that upload in parallel
+	 * 
+	 * @param	sourceDir		The source directory where the files are located
+	 * 
+	 * @param	destDir			The destination directory where the files will be placed
+	 * 
+	 * @param	parallelism		The number of sessions uploading at once
+	 * 
+	 * @return	The result of each file upload, null if the upload could not be started
+	 * 
+	 */
+	public DirTransferResult uploadDirFiles(String sourceDir, String destDir, int parallelism){
+		
+		//check that given params are not empty
+		if (sourceDir.isEmpty() || destDir.isEmpty() || parallelism < 1){
+			logger.error("Some of the given parameters are void or invalid. Uploading aborted...");
+			return null;
+		}
+		//check logged state
+		if (!this.logged){
+			logger.error("You can not send files if you are not logged in. Use login method first.");
+			return null;
+		}
+		
+		//get the files names to transfer
+		ArrayList<String> names = getFileNames(sourceDir);
+		return transferDirFiles(names, sourceDir, destDir, true, parallelism, new DirTransferResult());
+	}
+	
 	/**
 	 * Upload the specified file to the destination directory
 	 * 
@@ -485,23 +996,47 @@ public class FtpClient {
 			if (this.logged){
 						
 				File file = new File(filepath);
+				FtpSession session = null;
+				boolean broken = false;
 				//change to destination directory in ftp
 				try {
 					
-					String dir = client.currentDirectory();
-					
+					session = acquireSession();
 					//change directory only if necessary
-					if (!this.checkSameFolder(dir, destDir)){
-						logger.info("Changing directory to  " + destDir);
-						client.changeDirectory(destDir);
-						logger.info("Directory changed successfully, proceding to upload");
-					}
+					changeWorkingDirectory(session, destDir);
 
 					//check that file really exists
 					if (file.exists()){
 				
-							this.client.upload(file);
-							logger.info("File " + file.getName()  + " uploaded successfully!");
+						//retry broken transfers as the retry policy says, resuming where they stopped
+						int attempt = 1;
+						while (true){
+							try {
+								transferFile(session.getClient(), file, file.getName(), true, this.resume || attempt > 1);
+								break;
+							}
+							catch (FTPDataTransferException e) {
+								if (!this.retryPolicy.shouldRetry(attempt) || !this.retryPolicy.pause(attempt)){
+									throw e;
+								}
+							}
+							catch (FTPAbortedException e) {
+								if (!this.retryPolicy.shouldRetry(attempt) || !this.retryPolicy.pause(attempt)){
+									throw e;
+								}
+							}
+							if (logger.isInfoEnabled()){
+								logger.info("Upload of file " + file.getName() + " failed on attempt " + attempt + ", trying again");
+							}
+							FtpSession failed = session;
+							session = null;
+							session = recoverSession(failed, destDir);
+							attempt++;
+						}
+							if (logger.isInfoEnabled()){
+								logger.info("File " + file.getName()  + " uploaded successfully!");
+							}
+							forgetDirectory(session.getWorkingDirectory());
 							return true;
 							
 					}
@@ -513,35 +1048,37 @@ public class FtpClient {
 					}
 				}
 				catch (FTPDataTransferException e) {
-					logger.error("Could not upload file " + file.getName() + " to " + destDir);
-					e.printStackTrace();
+					broken = true;
+					fail("Could not upload file " + file.getName() + " to " + destDir, e);
 					return false;
 				} 
 				catch (FTPAbortedException e) {
-					logger.error("Could not upload file " + file.getName() + " to " + destDir);
-					e.printStackTrace();
+					broken = true;
+					fail("Could not upload file " + file.getName() + " to " + destDir, e);
 					return false;							
 				}
 				catch (IllegalStateException e) {
-					logger.error("Could not change directory to: " + destDir + " or could not upload file " + file);
-					e.printStackTrace();
+					broken = true;
+					fail("Could not change directory to: " + destDir + " or could not upload file " + file, e);
 					return false;
 				} 
 				catch (IOException e) {	
-					logger.error("Could not change directory to: " + destDir + " or could not upload file " + file);
-					e.printStackTrace();
+					broken = true;
+					fail("Could not change directory to: " + destDir + " or could not upload file " + file, e);
 					return false;
 				} 
 				catch (FTPIllegalReplyException e) {	
-					logger.error("Could not change directory to: " + destDir + " or could not upload file " + file);
-					e.printStackTrace();
+					broken = true;
+					fail("Could not change directory to: " + destDir + " or could not upload file " + file, e);
 					return false;
 				} 
 				catch (FTPException e) {
-					logger.error("Could not change directory to: " + destDir + " or could not upload file " + file);
-					e.printStackTrace();
+					fail("Could not change directory to: " + destDir + " or could not upload file " + file, e);
 					return false;
 				}
+				finally {
+					releaseSession(session, broken);
+				}
 			}
 			else{
 				logger.error("You can not send files if you are not logged in. Use login method first.");
@@ -552,7 +1089,10 @@ public class FtpClient {
 	
 	
 	/**
-	 * Downloads the specified file to the destination directory
+	 * Downloads the specified file to the destination directory using several sessions at once, each
+	 * one fetching a byte range of the file (restarting the transfer at the range offset) and writing
+	 * it straight to its place in the local file. Meant for very large files, falls back to downloadFile
+	 * if the file is small or the server can not restart transfers
 	 * 
 	 * @param	file			The name of the file to download, just the name no path required
 	 * 
@@ -560,10 +1100,222 @@ public class FtpClient {
 	 * 
 	 * @param	destDir			The local path where the file will be saved 
 	 * 
+	 * @param	segments		The number of byte ranges (and sessions) used to download the file
+	 * 
 	 * @return	TRUE if the download was successful
 	 * 
 	 */
-	public boolean downloadFile(String file, String sourceDir, String destDir){
+	public boolean downloadFileSegmented(final String file, final String sourceDir, String destDir, int segments){
+		
+		//check that given params are not empty
+		if (file.isEmpty() || destDir.isEmpty() || sourceDir.isEmpty() || segments < 1){
+			logger.error("Some of the given parameters are void or invalid. Downloading aborted...");
+			return false;
+		}
+		//check logged state
+		if (!this.logged){
+			logger.error("You can not download files if you are not logged in. Use login method first.");
+			return false;
+		}
+		//check that local destination exists and truly is a directory
+		File destDirectory = new File(destDir);
+		if (!destDirectory.exists() || !destDirectory.isDirectory()){
+			logger.error("Specified destination folder does not exist or is not a folder. Aborting download.");
+			return false;
+		}
+		
+		//find out the size of the file and whether the server can restart transfers
+		long size;
+		boolean resumeSupported;
+		FtpSession session = null;
+		boolean broken = false;
+		try {
+			session = acquireSession();
+			FTPClient client = session.getClient();
+			changeWorkingDirectory(session, sourceDir);
+			size = client.fileSize(file);
+			resumeSupported = client.isResumeSupported();
+		}
+		catch (IllegalStateException e) {
+			broken = true;
+			fail("Could not change directory to: " + sourceDir + " or could not get the size of file " + file, e);
+			return false;
+		}
+		catch (IOException e) {
+			broken = true;
+			fail("Could not change directory to: " + sourceDir + " or could not get the size of file " + file, e);
+			return false;
+		}
+		catch (FTPIllegalReplyException e) {
+			broken = true;
+			fail("Could not change directory to: " + sourceDir + " or could not get the size of file " + file, e);
+			return false;
+		}
+		catch (FTPException e) {
+			fail("Could not change directory to: " + sourceDir + " or could not get the size of file " + file, e);
+			return false;
+		}
+		finally {
+			releaseSession(session, broken);
+		}
+		
+		//a shared pool may not allow that many sessions at once
+		if (this.sessionPool != null && segments > this.sessionPool.getMaxActive()){
+			segments = this.sessionPool.getMaxActive();
+		}
+		//not worth splitting, or not possible
+		if (segments <= 1 || !resumeSupported || size < segments * MIN_SEGMENT_SIZE){
+			logger.info("File " + file + " is downloaded in a single segment");
+			return downloadFile(file, sourceDir, destDir);
+		}
+		
+		File localFile = new File(destDir, file);
+		final FtpSessionPool pool = this.sessionPool != null ? this.sessionPool : new FtpSessionPool(segments, segments, 60000);
+		ExecutorService executor = Executors.newFixedThreadPool(segments);
+		RandomAccessFile raf = null;
+		boolean ok = false;
+		try {
+			//preallocate the local file so every segment can be written in place
+			raf = new RandomAccessFile(localFile, "rw");
+			raf.setLength(size);
+			final FileChannel channel = raf.getChannel();
+			
+			long chunk = size / segments;
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i=0; i<segments; i++){
+				final long start = i * chunk;
+				final long length = (i == segments - 1) ? size - start : chunk;
+				results.add(executor.submit(new Callable<Boolean>() {
+					public Boolean call() {
+						return downloadSegment(pool, file, sourceDir, channel, start, length);
+					}
+				}));
+			}
+			
+			boolean complete = true;
+			for (Future<Boolean> result : results){
+				if (!result.get()){
+					complete = false;
+				}
+			}
+			if (!complete){
+				logger.error("Some segments of file " + file + " could not be downloaded. Aborting download.");
+				return false;
+			}
+			raf.close();
+			raf = null;
+			ok = this.checksumAlgorithm == checksum.NONE || verifyDownload(file, sourceDir, localFile, size);
+			if (ok){
+				logger.info("File " + file + " downloaded successfully to " + destDir + " in " + segments + " segments");
+			}
+			return ok;
+		}
+		catch (IOException e) {
+			fail("Could not write local file " + localFile, e);
+			return false;
+		}
+		catch (InterruptedException e) {
+			logger.error("Interrupted while downloading file " + file);
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch (ExecutionException e) {
+			fail("Could not download file " + file + " to " + destDir, e);
+			return false;
+		}
+		finally {
+			executor.shutdownNow();
+			if (raf != null){
+				try {
+					raf.close();
+				}
+				catch (IOException e) {
+					logger.error("Could not close local file " + localFile);
+				}
+			}
+			//the file was preallocated, with holes it would pass for complete
+			if (!ok && localFile.exists() && !localFile.delete()){
+				logger.error("Could not delete incomplete local file " + localFile);
+			}
+			if (pool != this.sessionPool){
+				pool.close();
+			}
+		}
+	}
+	
+	/**
+	 * Helping method that checks the checksum of a file downloaded in segments against the one of
+	 * the server copy. The segments arrive out of order, so the local file is read once at the end
+	 * 
+	 * @param	file			The name of the file in the FTP server
+	 * 
+	 * @param	sourceDir		The path where the file is located in the FTP server
+	 * 
+	 * @param	localFile		The downloaded file
+	 * 
+	 * @param	size			The size of the file
+	 * 
+	 * @return	<code>true</code> if the checksums match or the server can not tell its checksum
+	 */
+	private boolean verifyDownload(String file, String sourceDir, File localFile, long size){
+		
+		FtpSession session = null;
+		boolean broken = false;
+		try {
+			Checksums.Digest digest = Checksums.newDigest(this.checksumAlgorithm);
+			Checksums.update(digest, localFile, size);
+			session = acquireSession();
+			changeWorkingDirectory(session, sourceDir);
+			chooseDataConnection(session.getClient());
+			String expected = expectedChecksum(session.getClient(), file, false, digest);
+			if (expected != null && !expected.equals(digest.hex())){
+				fail("Could not download file " + file, new ChecksumMismatchException(file, expected, digest.hex()));
+				return false;
+			}
+			return true;
+		}
+		catch (IllegalStateException e) {
+			broken = true;
+			fail("Could not check the checksum of file " + file, e);
+		}
+		catch (IOException e) {
+			broken = true;
+			fail("Could not check the checksum of file " + file, e);
+		}
+		catch (FTPIllegalReplyException e) {
+			broken = true;
+			fail("Could not check the checksum of file " + file, e);
+		}
+		catch (FTPException e) {
+			fail("Could not check the checksum of file " + file, e);
+		}
+		catch (FTPDataTransferException e) {
+			broken = true;
+			fail("Could not check the checksum of file " + file, e);
+		}
+		catch (FTPAbortedException e) {
+			broken = true;
+			fail("Could not check the checksum of file " + file, e);
+		}
+		finally {
+			releaseSession(session, broken);
+		}
+		return false;
+	}
+	
+	/**
+	 * Downloads the specified file to the destination directory
+	 * 
+	 * @param	file			The name of the file to download, just the name no path required
+	 * 
+	 * @param	sourceDir		The path where the file is located in the FTP server
+	 * 
+	 * @param	destDir			The local path where the file will be saved 
+	 * 
+	 * @return	TRUE if the download was successful
+	 * 
+	 */
+	public boolean downloadFile(String file, String sourceDir, String destDir){
 		
 		//check that given params are not empty
 		if (file.isEmpty() || destDir.isEmpty() || sourceDir.isEmpty()){
@@ -575,18 +1327,14 @@ public class FtpClient {
 			//check logged state
 			if (this.logged){
 						
+				FtpSession session = null;
+				boolean broken = false;
 				//change to destination directory in ftp
 				try {
 					
-					String dir = client.currentDirectory();
-					
+					session = acquireSession();
 					//change directory only if necessary
-					if (!this.checkSameFolder(dir,sourceDir)){
-						logger.info("Current directory is " + dir);
-						logger.info("Changing directory to  " + sourceDir);
-						client.changeDirectory(sourceDir);
-						logger.info("Directory changed successfully, proceding to download");
-					}
+					changeWorkingDirectory(session, sourceDir);
 					
 					String localFilePath = new String();
 					
@@ -606,9 +1354,35 @@ public class FtpClient {
 						}
 						
 						File localFile = new File(localFilePath);
-												
-						this.client.download(file, localFile);
-						logger.info("File " + file  + " downloaded successfully to " + destDir);
+						
+						//retry broken transfers as the retry policy says, resuming where they stopped
+						int attempt = 1;
+						while (true){
+							try {
+								transferFile(session.getClient(), localFile, file, false, this.resume || attempt > 1);
+								break;
+							}
+							catch (FTPDataTransferException e) {
+								if (!this.retryPolicy.shouldRetry(attempt) || !this.retryPolicy.pause(attempt)){
+									throw e;
+								}
+							}
+							catch (FTPAbortedException e) {
+								if (!this.retryPolicy.shouldRetry(attempt) || !this.retryPolicy.pause(attempt)){
+									throw e;
+								}
+							}
+							if (logger.isInfoEnabled()){
+								logger.info("Download of file " + file + " failed on attempt " + attempt + ", trying again");
+							}
+							FtpSession failed = session;
+							session = null;
+							session = recoverSession(failed, sourceDir);
+							attempt++;
+						}
+						if (logger.isInfoEnabled()){
+							logger.info("File " + file  + " downloaded successfully to " + destDir);
+						}
 								
 						return true;
 						
@@ -619,36 +1393,38 @@ public class FtpClient {
 					}
 				}
 				catch (FTPDataTransferException e) {
-					logger.error("Could not download file " + file + " to " + destDir);
-					e.printStackTrace();
+					broken = true;
+					fail("Could not download file " + file + " to " + destDir, e);
 					return false;
 				} 
 				catch (FTPAbortedException e) {
-					logger.error("Could not download file " + file + " to " + destDir);
-					e.printStackTrace();
+					broken = true;
+					fail("Could not download file " + file + " to " + destDir, e);
 					return false;							
 				}
 				
 				catch (IllegalStateException e) {
-					logger.error("Could not change directory to: " + sourceDir + " or could not download file " + file);
-					e.printStackTrace();
+					broken = true;
+					fail("Could not change directory to: " + sourceDir + " or could not download file " + file, e);
 					return false;
 				} 
 				catch (IOException e) {	
-					logger.error("Could not change directory to: " + sourceDir + " or could not download file " + file);
-					e.printStackTrace();
+					broken = true;
+					fail("Could not change directory to: " + sourceDir + " or could not download file " + file, e);
 					return false;
 				} 
 				catch (FTPIllegalReplyException e) {	
-					logger.error("Could not change directory to: " + sourceDir + " or could not download file " + file);
-					e.printStackTrace();
+					broken = true;
+					fail("Could not change directory to: " + sourceDir + " or could not download file " + file, e);
 					return false;
 				} 
 				catch (FTPException e) {
-					logger.error("Could not change directory to: " + sourceDir + " or could not download file " + file);
-					e.printStackTrace();
+					fail("Could not change directory to: " + sourceDir + " or could not download file " + file, e);
 					return false;
 				}
+				finally {
+					releaseSession(session, broken);
+				}
 			}
 			else{
 				logger.error("You can not send files if you are not logged in. Use login method first.");
@@ -657,6 +1433,66 @@ public class FtpClient {
 		}
 	}
 	
+	/**
+	 * Uploads the contents of a stream as a file of the FTP server, without going through a local file.
+	 * The stream is read until its end but not closed
+	 * 
+	 * @param	remotePath		The path of the file in the FTP server, a name alone goes to the current directory
+	 * 
+	 * @param	in				The stream with the contents of the file
+	 * 
+	 * @return	TRUE if the upload was successful
+	 * 
+	 */
+	public boolean upload(String remotePath, InputStream in){
+		return transferStream(remotePath, in, null);
+	}
+	
+	/**
+	 * Uploads the contents of a channel as a file of the FTP server, without going through a local file.
+	 * The channel is read until its end but not closed
+	 * 
+	 * @param	remotePath		The path of the file in the FTP server, a name alone goes to the current directory
+	 * 
+	 * @param	channel			The channel with the contents of the file
+	 * 
+	 * @return	TRUE if the upload was successful
+	 * 
+	 */
+	public boolean upload(String remotePath, ReadableByteChannel channel){
+		return transferStream(remotePath, Channels.newInputStream(channel), null);
+	}
+	
+	/**
+	 * Downloads a file of the FTP server into a stream, without going through a local file.
+	 * The stream is flushed but not closed
+	 * 
+	 * @param	remotePath		The path of the file in the FTP server, a name alone is taken from the current directory
+	 * 
+	 * @param	out				The stream the contents of the file are written to
+	 * 
+	 * @return	TRUE if the download was successful
+	 * 
+	 */
+	public boolean download(String remotePath, OutputStream out){
+		return transferStream(remotePath, null, out);
+	}
+	
+	/**
+	 * Downloads a file of the FTP server into a channel, without going through a local file.
+	 * The channel is not closed
+	 * 
+	 * @param	remotePath		The path of the file in the FTP server, a name alone is taken from the current directory
+	 * 
+	 * @param	channel			The channel the contents of the file are written to
+	 * 
+	 * @return	TRUE if the download was successful
+	 * 
+	 */
+	public boolean download(String remotePath, WritableByteChannel channel){
+		return transferStream(remotePath, null, Channels.newOutputStream(channel));
+	}
+	
 	/**
 	 * Downloads the set of files within the source directory to the destination directory
 	 * 
@@ -679,23 +1515,18 @@ public class FtpClient {
 			//check logged state
 			if (this.logged){
 				
+				FtpSession session = null;
+				boolean broken = false;
 				//change directory
 				try {
 				
-					String dir = client.currentDirectory();
-					
+					session = acquireSession();
+					FTPClient client = session.getClient();
 					//change directory only if necessary
-					if (!this.checkSameFolder(dir, sourceDir)){
-						logger.info("Current directory is " + dir);
-						logger.info("Changing directory to  " + sourceDir);
-						client.changeDirectory(sourceDir);
-						logger.info("Directory changed successfully, proceding to download");
-					}
+					changeWorkingDirectory(session, sourceDir);
 					
 					//list files in source directory	
-					Object o = Class.forName("it.sauronsoftware.ftp4j.FTPFile");
-					logger.info("Instantiated FTPFile " + o.toString() + " list correctly. Gathering list of files");
-					list = client.list();
+					FTPFile[] list = listDirectory(session);
 					
 					//check that there was something in the folder specified
 					if (list.length!=0){
@@ -708,8 +1539,10 @@ public class FtpClient {
 								String path = destDir + "/" + name;
 								File file = new File(path);
 								//Download file
-								this.client.download(name, file);
-								logger.info("File " + name  + " downloaded successfully!");
+								transferFile(client, file, name, false, false);
+								if (logger.isInfoEnabled()){
+									logger.info("File " + name  + " downloaded successfully!");
+								}
 							}
 						}
 						
@@ -723,44 +1556,41 @@ public class FtpClient {
 					}
 				} 
 				catch (IllegalStateException e1) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download");
-					e1.printStackTrace();
+					broken = true;
+					fail("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download", e1);
 					return false;
 				} 
 				catch (IOException e1) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download");
-					e1.printStackTrace();
+					broken = true;
+					fail("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download", e1);
 					return false;
 				} 
 				catch (FTPIllegalReplyException e1) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download");
-					e1.printStackTrace();
+					broken = true;
+					fail("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download", e1);
 					return false;
 				} 
 				catch (FTPException e1) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download");
-					e1.printStackTrace();
+					fail("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download", e1);
 					return false;
 				} 
 				catch (FTPDataTransferException e1) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download");
-					e1.printStackTrace();
+					broken = true;
+					fail("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download", e1);
 					return false;
 				} 
 				catch (FTPAbortedException e1) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download");
-					e1.printStackTrace();
+					broken = true;
+					fail("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download", e1);
 					return false;
 				} 
 				catch (FTPListParseException e1) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download");
-					e1.printStackTrace();
-					return false;
-				} catch (ClassNotFoundException e) {
-					logger.error("Could not instantiate FTPClient, thus no list of files could be made, aborting.");
-					e.printStackTrace();
+					fail("Listing for files, changing directory to " + sourceDir + " or downloading a file went wrong. Aborting Download", e1);
 					return false;
 				}
+				finally {
+					releaseSession(session, broken);
+				}
 			}	
 			else{
 				logger.error("You can not send files if you are not logged in. Use login method first.");
@@ -769,219 +1599,2732 @@ public class FtpClient {
 		}
 	}
 	
+	/**
+	 * Downloads the set of files within the source directory to the destination directory, spreading
+	 * them across several logged in sessions that download in parallel
+	 * 
+	 * @param	sourceDir		The source directory where the files are located in the FTP server
+	 * 
+	 * @param	destDir			The local directory where the files will be placed
+	 * 
+	 * @param	parallelism		The number of sessions downloading at once
+	 * 
+	 * @return	The result of each file download, null if the download could not be started
+	 * 
+	 */
+	public DirTransferResult downloadDirFiles(String sourceDir, String destDir, int parallelism){
+		
+		//check that given params are not empty
+		if (sourceDir.isEmpty() || destDir.isEmpty() || parallelism < 1){
+			logger.error("Some of the given parameters are void or invalid. Downloading aborted...");
+			return null;
+		}
+		//check logged state
+		if (!this.logged){
+			logger.error("You can not download files if you are not logged in. Use login method first.");
+			return null;
+		}
+		//check that local destination exists and truly is a directory
+		File destDirectory = new File(destDir);
+		if (!destDirectory.exists() || !destDirectory.isDirectory()){
+			logger.error("Specified destination folder does not exist or is not a folder. Aborting download.");
+			return null;
+		}
+		
+		//list the files once, then share them among the sessions
+		Map<String, FTPFile> files = listRemoteFiles(sourceDir, false);
+		if (files == null){
+			return null;
+		}
+		return transferDirFiles(new ArrayList<String>(files.keySet()), destDir, sourceDir, false, parallelism, new DirTransferResult());
+	}
 	
 	/**
-	 * Deletes the specified file in the destination directory
+	 * Uploads the whole tree under the source directory to the destination directory, creating the
+	 * remote directories as needed. The tree is walked as it is uploaded, so only a bounded number
+	 * of files are waiting to be transferred at any time, whatever the size of the tree
 	 * 
-	 * @param	file			The name of the file to delete, just the name no path required
+	 * @param	sourceDir		The local directory at the top of the tree
 	 * 
-	 * @param	sourceDir		The path where the file is located in the FTP server
+	 * @param	destDir			The directory in the FTP server where the tree will be placed
 	 * 
-	 * @return	TRUE if the deletion was successful
+	 * @param	parallelism		The number of sessions uploading at once
+	 * 
+	 * @return	The result of each file upload, named by its path relative to sourceDir, null if the upload could not be started
 	 * 
 	 */
-	public boolean deleteFile(String file, String sourceDir){
+	public DirTransferResult uploadTree(String sourceDir, final String destDir, int parallelism){
 		
 		//check that given params are not empty
-		if (file.isEmpty() || sourceDir.isEmpty()){
-			logger.error("Some of the given parameters are void. Deleting aborted...");
-			return false;
+		if (sourceDir.isEmpty() || destDir.isEmpty() || parallelism < 1){
+			logger.error("Some of the given parameters are void or invalid. Uploading aborted...");
+			return null;
 		}
-		else{
-			
-			//check logged state
-			if (this.logged){
-						
-				//change to destination directory in ftp
-				try {
-					
-					String dir = client.currentDirectory();
+		//check logged state
+		if (!this.logged){
+			logger.error("You can not send files if you are not logged in. Use login method first.");
+			return null;
+		}
+		final Path root = Paths.get(sourceDir);
+		if (!Files.isDirectory(root)){
+			logger.error("Specified source folder does not exist or is not a folder. Aborting upload.");
+			return null;
+		}
+		
+		final DirTransferResult result = new DirTransferResult();
+		final FtpSessionPool pool = this.sessionPool != null ? this.sessionPool : new FtpSessionPool(parallelism + 1, parallelism + 1, 60000);
+		final ForkJoinPool scheduler = new ForkJoinPool(parallelism);
+		//files walked but not transferred yet, the walk waits when there are too many
+		final int bound = parallelism * TREE_BATCH_SIZE;
+		final Semaphore pending = new Semaphore(bound);
+		
+		logger.info("Uploading tree " + sourceDir + " to " + destDir + " using " + parallelism + " sessions");
+		try {
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
 					
-					//change directory only if necessary
-					if (!this.checkSameFolder(dir,sourceDir)){
-						logger.info("Current directory is " + dir);
-						logger.info("Changing directory to  " + sourceDir);
-						client.changeDirectory(sourceDir);
-						logger.info("Directory changed successfully, proceding to delete");
+					String remoteDir = remotePath(destDir, root.relativize(dir));
+					if (!createRemoteDirectory(pool, remoteDir)){
+						result.add(new TransferResult(root.relativize(dir).toString(), 0, new IllegalStateException("Could not create remote directory " + remoteDir)));
+						return FileVisitResult.SKIP_SUBTREE;
 					}
-											
-					//we are placed in correct folder, procede to delete
-					this.client.deleteFile(file);
-					logger.info("File " + file  + " deleted successfully from " + sourceDir);
-								
-					return true;
-						
+					return FileVisitResult.CONTINUE;
+				}
+				
+				public FileVisitResult visitFile(final Path file, BasicFileAttributes attrs) {
 					
-				}				
-				catch (IllegalStateException e) {
-					logger.error("Could not change directory to: " + sourceDir + " or could not delete file " + file);
-					e.printStackTrace();
-					return false;
-				} 
-				catch (IOException e) {	
-					logger.error("Could not change directory to: " + sourceDir + " or could not delete file " + file);
-					e.printStackTrace();
-					return false;
-				} 
-				catch (FTPIllegalReplyException e) {	
-					logger.error("Could not change directory to: " + sourceDir + " or could not delete file " + file);
-					e.printStackTrace();
-					return false;
-				} 
-				catch (FTPException e) {
-					logger.error("Could not change directory to: " + sourceDir + " or could not delete file " + file);
-					e.printStackTrace();
-					return false;
+					if (!attrs.isRegularFile()){
+						return FileVisitResult.CONTINUE;
+					}
+					final Path relative = root.relativize(file);
+					final String remoteDir = remotePath(destDir, relative.getParent());
+					try {
+						pending.acquire();
+					}
+					catch (InterruptedException e) {
+						logger.error("Interrupted while uploading tree to " + destDir);
+						Thread.currentThread().interrupt();
+						return FileVisitResult.TERMINATE;
+					}
+					scheduler.execute(new Runnable() {
+						public void run() {
+							try {
+								result.add(transferTreeFile(pool, file.toFile(), remoteDir, relative.toString(), true, resume));
+							}
+							finally {
+								pending.release();
+							}
+						}
+					});
+					return FileVisitResult.CONTINUE;
+				}
+				
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+					result.add(new TransferResult(root.relativize(file).toString(), 0, e));
+					logger.error("Could not read " + file + ": " + e.getMessage());
+					return FileVisitResult.CONTINUE;
 				}
+			});
+		}
+		catch (IOException e) {
+			fail("Could not walk the tree " + sourceDir, e);
+		}
+		try {
+			//wait for the files still in flight
+			pending.acquire(bound);
+		}
+		catch (InterruptedException e) {
+			logger.error("Interrupted while uploading tree to " + destDir);
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			scheduler.shutdownNow();
+			if (pool != this.sessionPool){
+				pool.close();
 			}
-			else{
-				logger.error("You can not delete a file if you are not logged in. Use login method first.");
-				return false;
+		}
+		result.finish();
+		logger.info("Upload of tree " + sourceDir + " finished: " + result);
+		return result;
+	}
+	
+	/**
+	 * Downloads the whole tree under the source directory to the destination directory, creating the
+	 * local directories as needed. Every remote directory is listed as its own task, so listings and
+	 * transfers of different directories run in parallel and idle sessions steal work from busy ones
+	 * 
+	 * @param	sourceDir		The directory at the top of the tree in the FTP server
+	 * 
+	 * @param	destDir			The local directory where the tree will be placed
+	 * 
+	 * @param	parallelism		The number of sessions downloading at once
+	 * 
+	 * @return	The result of each file download, named by its path relative to sourceDir, null if the download could not be started
+	 * 
+	 */
+	public DirTransferResult downloadTree(String sourceDir, String destDir, int parallelism){
+		
+		//check that given params are not empty
+		if (sourceDir.isEmpty() || destDir.isEmpty() || parallelism < 1){
+			logger.error("Some of the given parameters are void or invalid. Downloading aborted...");
+			return null;
+		}
+		//check logged state
+		if (!this.logged){
+			logger.error("You can not download files if you are not logged in. Use login method first.");
+			return null;
+		}
+		//check that local destination exists and truly is a directory
+		File destDirectory = new File(destDir);
+		if (!destDirectory.exists() || !destDirectory.isDirectory()){
+			logger.error("Specified destination folder does not exist or is not a folder. Aborting download.");
+			return null;
+		}
+		
+		DirTransferResult result = new DirTransferResult();
+		FtpSessionPool pool = this.sessionPool != null ? this.sessionPool : new FtpSessionPool(parallelism, parallelism, 60000);
+		ForkJoinPool scheduler = new ForkJoinPool(parallelism);
+		
+		logger.info("Downloading tree " + sourceDir + " to " + destDir + " using " + parallelism + " sessions");
+		try {
+			scheduler.invoke(new DownloadDirTask(pool, sourceDir, destDirectory, "", result));
+		}
+		finally {
+			scheduler.shutdown();
+			if (pool != this.sessionPool){
+				pool.close();
 			}
 		}
+		result.finish();
+		logger.info("Download of tree " + sourceDir + " finished: " + result);
+		return result;
 	}
 	
 	/**
-	 * Deletes the set of files within the source directory 
+	 * Uploads the set of files within the source directory as a single zip archive, generated on the
+	 * fly while it is uploaded, so the whole directory takes one data connection instead of one per file
 	 * 
-	 * @param	sourceDir	The source directory where the files are located
+	 * @param	sourceDir		The source directory where the files are located
 	 * 
-	 * @return	<code>true</code> if the upload was successful
+	 * @param	destDir			The destination directory where the archive will be placed
+	 * 
+	 * @param	archiveName		The name of the archive in the FTP server
+	 * 
+	 * @param	manifest		If true a manifest with the name, size and date of each file is uploaded
+	 * 							next to the archive, as archiveName.manifest
+	 * 
+	 * @return	The result of each file, null if the upload could not be started
 	 * 
 	 */
-	public boolean deleteDir(String sourceDir){
+	public DirTransferResult uploadDirPacked(final String sourceDir, String destDir, String archiveName, boolean manifest){
 		
 		//check that given params are not empty
-		if (sourceDir.isEmpty()){
-			logger.error("Some of the given parameters are void. Deletion aborted...");
-			return false;
+		if (sourceDir.isEmpty() || destDir.isEmpty() || archiveName.isEmpty()){
+			logger.error("Some of the given parameters are void. Uploading aborted...");
+			return null;
 		}
-		else{
-			
-			//check logged state
-			if (this.logged){
-				
-				//change directory
-				try {
-				
-					String dir = client.currentDirectory();
+		//check logged state
+		if (!this.logged){
+			logger.error("You can not send files if you are not logged in. Use login method first.");
+			return null;
+		}
+		
+		final List<String> names = getFileNames(sourceDir);
+		final StringBuilder lines = manifest ? new StringBuilder() : null;
+		final List<List<TransferResult>> packed = new ArrayList<List<TransferResult>>(1);
+		final List<Exception> errors = new ArrayList<Exception>(1);
+		final PipedOutputStream out = new PipedOutputStream();
+		PipedInputStream in;
+		try {
+			in = new PipedInputStream(out, PACK_BUFFER_SIZE);
+		}
+		catch (IOException e) {
+			fail("Could not create the pipe for the archive", e);
+			return null;
+		}
+		
+		DirTransferResult result = new DirTransferResult();
+		String archivePath = remotePath(destDir, archiveName);
+		logger.info("Packing " + names.size() + " files of " + sourceDir + " into " + archivePath);
+		//the archive is written by its own thread while this one uploads it
+		Thread packer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					packed.add(DirArchive.pack(new File(sourceDir), names, out, lines));
+				}
+				catch (IOException e) {
+					errors.add(e);
+				}
+			}
+		}, "ftp-packer");
+		packer.start();
+		boolean uploaded = upload(archivePath, in);
+		try {
+			//lets the packer end if the upload stopped reading
+			in.close();
+			packer.join();
+		}
+		catch (IOException e) {
+			logger.error("Could not close the pipe of the archive");
+		}
+		catch (InterruptedException e) {
+			logger.error("Interrupted while packing " + sourceDir);
+			Thread.currentThread().interrupt();
+		}
+		
+		//a failed upload or packer leaves a truncated archive behind, it is not worth keeping
+		Exception error = null;
+		if (!uploaded){
+			error = new IOException("Could not upload archive " + archivePath);
+			logger.error("Could not upload the archive of " + sourceDir + ", deleting what reached the server");
+			deleteFile(archiveName, destDir);
+		}
+		else if (!errors.isEmpty() || packed.isEmpty()){
+			error = errors.isEmpty() ? new IOException("Archive " + archivePath + " was not completed") : errors.get(0);
+			logger.error("Could not pack " + sourceDir + ", deleting the incomplete archive");
+			deleteFile(archiveName, destDir);
+		}
+		else if (manifest && !upload(remotePath(destDir, archiveName + DirArchive.MANIFEST_SUFFIX), new ByteArrayInputStream(lines.toString().getBytes(StandardCharsets.UTF_8)))){
+			error = new IOException("Could not upload the manifest of " + archivePath);
+		}
+		
+		if (error == null){
+			for (TransferResult file : packed.get(0)){
+				result.add(file);
+			}
+		}
+		else{
+			for (String name : names){
+				result.add(new TransferResult(name, 0, error));
+			}
+		}
+		result.finish();
+		logger.info("Packed upload of " + sourceDir + " finished: " + result);
+		return result;
+	}
+	
+	/**
+	 * Downloads a zip archive uploaded with uploadDirPacked and unpacks it into the destination directory
+	 * while it is downloaded, without writing the archive itself to disk
+	 * 
+	 * @param	sourceDir		The directory where the archive is located in the FTP server
+	 * 
+	 * @param	archiveName		The name of the archive in the FTP server
+	 * 
+	 * @param	destDir			The local directory where the files will be placed
+	 * 
+	 * @param	manifest		If true the manifest uploaded next to the archive is used to check that
+	 * 							every file arrived whole and to restore the dates of the files
+	 * 
+	 * @return	The result of each file, null if the download could not be started
+	 * 
+	 */
+	public DirTransferResult downloadDirPacked(String sourceDir, String archiveName, String destDir, boolean manifest){
+		
+		//check that given params are not empty
+		if (sourceDir.isEmpty() || archiveName.isEmpty() || destDir.isEmpty()){
+			logger.error("Some of the given parameters are void. Downloading aborted...");
+			return null;
+		}
+		//check logged state
+		if (!this.logged){
+			logger.error("You can not download files if you are not logged in. Use login method first.");
+			return null;
+		}
+		//check that local destination exists and truly is a directory
+		File destDirectory = new File(destDir);
+		if (!destDirectory.exists() || !destDirectory.isDirectory()){
+			logger.error("Specified destination folder does not exist or is not a folder. Aborting download.");
+			return null;
+		}
+		
+		Map<String, long[]> expected = null;
+		if (manifest){
+			ByteArrayOutputStream lines = new ByteArrayOutputStream();
+			if (!download(remotePath(sourceDir, archiveName + DirArchive.MANIFEST_SUFFIX), lines)){
+				logger.error("Could not download the manifest of " + archiveName + ". Aborting download.");
+				return null;
+			}
+			expected = DirArchive.parseManifest(new String(lines.toByteArray(), StandardCharsets.UTF_8));
+		}
+		
+		final String archivePath = remotePath(sourceDir, archiveName);
+		final PipedInputStream in = new PipedInputStream(PACK_BUFFER_SIZE);
+		final PipedOutputStream out;
+		try {
+			out = new PipedOutputStream(in);
+		}
+		catch (IOException e) {
+			fail("Could not create the pipe for the archive", e);
+			return null;
+		}
+		
+		DirTransferResult result = new DirTransferResult();
+		final boolean[] downloaded = new boolean[1];
+		//the archive is downloaded by its own thread while this one unpacks it
+		Thread downloader = new Thread(new Runnable() {
+			public void run() {
+				downloaded[0] = download(archivePath, out);
+				try {
+					out.close();
+				}
+				catch (IOException e) {
+					logger.error("Could not close the pipe of the archive");
+				}
+			}
+		}, "ftp-unpacker");
+		downloader.start();
+		try {
+			DirArchive.unpack(in, destDirectory, expected, result);
+			//the central directory comes after the last entry, the download must get to write it
+			byte[] rest = new byte[8192];
+			while (in.read(rest) != -1){
+				//only the end of the archive is left, nothing to unpack
+			}
+		}
+		catch (IOException e) {
+			logger.error("Could not unpack " + archivePath + ": " + e.getMessage());
+			result.add(new TransferResult(archiveName, 0, e));
+		}
+		try {
+			//lets the download end if unpacking stopped reading
+			in.close();
+			downloader.join();
+		}
+		catch (IOException e) {
+			logger.error("Could not close the pipe of the archive");
+		}
+		catch (InterruptedException e) {
+			logger.error("Interrupted while unpacking " + archivePath);
+			Thread.currentThread().interrupt();
+		}
+		if (!downloaded[0]){
+			result.add(new TransferResult(archiveName, 0, new IOException("Could not download archive " + archivePath)));
+		}
+		result.finish();
+		logger.info("Packed download of " + archivePath + " finished: " + result);
+		return result;
+	}
+	
+	/**
+	 * Brings the destination directory up to date with the source directory, transferring only the files
+	 * that are missing or have changed. A file has changed if its size is different or if the source copy
+	 * is newer than the destination one by more than syncTimeTolerance
+	 * 
+	 * @param	sourceDir		The source directory, local when uploading and in the FTP server when downloading
+	 * 
+	 * @param	destDir			The destination directory, in the FTP server when uploading and local when downloading
+	 * 
+	 * @param	direction		Whether files go up to the server or down from it
+	 * 
+	 * @return	The result of each transferred file and how many were up to date, null if the sync could not be started
+	 * 
+	 */
+	public SyncResult syncDir(String sourceDir, String destDir, syncDirection direction){
+		return syncDir(sourceDir, destDir, direction, 1);
+	}
+	
+	/**
+	 * Brings the destination directory up to date with the source directory, transferring only the files
+	 * that are missing or have changed over several sessions at once
+	 * 
+	 * @param	sourceDir		The source directory, local when uploading and in the FTP server when downloading
+	 * 
+	 * @param	destDir			The destination directory, in the FTP server when uploading and local when downloading
+	 * 
+	 * @param	direction		Whether files go up to the server or down from it
+	 * 
+	 * @param	parallelism		The number of sessions transferring at once
+	 * 
+	 * @return	The result of each transferred file and how many were up to date, null if the sync could not be started
+	 * 
+	 */
+	public SyncResult syncDir(String sourceDir, String destDir, syncDirection direction, int parallelism){
+		
+		//check that given params are not empty
+		if (sourceDir.isEmpty() || destDir.isEmpty() || direction == null || parallelism < 1){
+			logger.error("Some of the given parameters are void or invalid. Sync aborted...");
+			return null;
+		}
+		//check logged state
+		if (!this.logged){
+			logger.error("You can not sync files if you are not logged in. Use login method first.");
+			return null;
+		}
+		
+		boolean upload = direction == syncDirection.UPLOAD;
+		String localDir = upload ? sourceDir : destDir;
+		String remoteDir = upload ? destDir : sourceDir;
+		
+		//check that local directory exists and truly is a directory
+		File localDirectory = new File(localDir);
+		if (!localDirectory.exists() || !localDirectory.isDirectory()){
+			logger.error("Specified local folder " + localDir + " does not exist or is not a folder. Sync aborted.");
+			return null;
+		}
+		
+		Map<String, FTPFile> remoteFiles = listRemoteFiles(remoteDir, true);
+		if (remoteFiles == null){
+			return null;
+		}
+		
+		//find out what has to be transferred
+		SyncResult result = new SyncResult();
+		List<String> changed = new ArrayList<String>();
+		if (upload){
+			for (String name : getFileNames(localDir)){
+				File localFile = new File(localDir, name);
+				if (needsSync(localFile, remoteFiles.get(name), true)){
+					changed.add(name);
+				}
+				else{
+					result.addSkipped(localFile.length());
+				}
+			}
+		}
+		else{
+			for (FTPFile remoteFile : remoteFiles.values()){
+				if (needsSync(new File(localDir, remoteFile.getName()), remoteFile, false)){
+					changed.add(remoteFile.getName());
+				}
+				else{
+					result.addSkipped(remoteFile.getSize());
+				}
+			}
+		}
+		
+		logger.info(changed.size() + " files are new or changed, " + result.getSkipped() + " are up to date");
+		if (changed.isEmpty()){
+			result.finish();
+			return result;
+		}
+		return transferDirFiles(changed, localDir, remoteDir, upload, parallelism, result);
+	}
+	
+	
+	/**
+	 * Deletes the specified file in the destination directory
+	 * 
+	 * @param	file			The name of the file to delete, just the name no path required
+	 * 
+	 * @param	sourceDir		The path where the file is located in the FTP server
+	 * 
+	 * @return	TRUE if the deletion was successful
+	 * 
+	 */
+	public boolean deleteFile(String file, String sourceDir){
+		
+		//check that given params are not empty
+		if (file.isEmpty() || sourceDir.isEmpty()){
+			logger.error("Some of the given parameters are void. Deleting aborted...");
+			return false;
+		}
+		else{
+			
+			//check logged state
+			if (this.logged){
+						
+				FtpSession session = null;
+				boolean broken = false;
+				//change to destination directory in ftp
+				try {
 					
+					session = acquireSession();
+					FTPClient client = session.getClient();
 					//change directory only if necessary
-					if (!this.checkSameFolder(dir, sourceDir)){
-						logger.info("Current directory is " + dir);
-						logger.info("Changing directory to  " + sourceDir);
-						client.changeDirectory(sourceDir);
-						logger.info("Directory changed successfully, proceding to delete");
+					changeWorkingDirectory(session, sourceDir);
+											
+					//we are placed in correct folder, procede to delete
+					client.deleteFile(file);
+					if (logger.isInfoEnabled()){
+						logger.info("File " + file  + " deleted successfully from " + sourceDir);
+					}
+					forgetDirectory(session.getWorkingDirectory());
+								
+					return true;
+						
+					
+				}				
+				catch (IllegalStateException e) {
+					broken = true;
+					fail("Could not change directory to: " + sourceDir + " or could not delete file " + file, e);
+					return false;
+				} 
+				catch (IOException e) {	
+					broken = true;
+					fail("Could not change directory to: " + sourceDir + " or could not delete file " + file, e);
+					return false;
+				} 
+				catch (FTPIllegalReplyException e) {	
+					broken = true;
+					fail("Could not change directory to: " + sourceDir + " or could not delete file " + file, e);
+					return false;
+				} 
+				catch (FTPException e) {
+					fail("Could not change directory to: " + sourceDir + " or could not delete file " + file, e);
+					return false;
+				}
+				finally {
+					releaseSession(session, broken);
+				}
+			}
+			else{
+				logger.error("You can not delete a file if you are not logged in. Use login method first.");
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * Deletes the source directory and everything under it
+	 * 
+	 * @param	sourceDir	The directory to delete in the FTP server
+	 * 
+	 * @return	<code>true</code> if the whole tree was deleted
+	 * 
+	 */
+	public boolean deleteDir(String sourceDir){
+		
+		DeleteResult result = deleteDir(sourceDir, 1, null);
+		return result != null && result.isSuccessful();
+	}
+	
+	/**
+	 * Deletes the source directory and everything under it, spreading the work across several logged
+	 * in sessions. The tree is walked depth first, every directory being removed once its contents are
+	 * gone. An entry that can not be deleted is recorded and the delete goes on with the rest
+	 * 
+	 * @param	sourceDir		The directory to delete in the FTP server
+	 * 
+	 * @param	parallelism		The number of sessions deleting at once
+	 * 
+	 * @param	listener		Who is told about the progress of the delete, null for nobody
+	 * 
+	 * @return	The entries deleted and the ones that failed, null if the delete could not be started
+	 * 
+	 */
+	public DeleteResult deleteDir(String sourceDir, int parallelism, DeleteListener listener){
+		
+		//check that given params are not empty
+		if (sourceDir.isEmpty() || parallelism < 1){
+			logger.error("Some of the given parameters are void or invalid. Deletion aborted...");
+			return null;
+		}
+		//check logged state
+		if (!this.logged){
+			logger.error("You can not delete files if you are not logged in. Use login method first.");
+			return null;
+		}
+		
+		//every session has a working directory of its own, a relative path must be made absolute first
+		String absoluteDir = absoluteDirectory(sourceDir);
+		if (absoluteDir == null){
+			return null;
+		}
+		
+		DeleteResult result = new DeleteResult(listener);
+		logger.info("Deleting tree " + sourceDir + " using " + parallelism + " sessions");
+		if (parallelism == 1){
+			//a single session can be the one of this client, and needs no scheduler
+			new DeleteDirTask(this.sessionPool, absoluteDir, "", result, false).compute();
+		}
+		else{
+			FtpSessionPool pool = this.sessionPool != null ? this.sessionPool : new FtpSessionPool(parallelism, parallelism, 60000);
+			ForkJoinPool scheduler = new ForkJoinPool(parallelism);
+			try {
+				scheduler.invoke(new DeleteDirTask(pool, absoluteDir, "", result, true));
+			}
+			finally {
+				scheduler.shutdown();
+				if (pool != this.sessionPool){
+					pool.close();
+				}
+			}
+		}
+		result.finish();
+		logger.info("Deletion of tree " + sourceDir + " finished: " + result);
+		return result;
+	}
+	
+	/**
+	 * Helping method that gives the absolute path of a remote directory, changing to it with the
+	 * session of this client, which also checks that it exists
+	 * 
+	 * @param	dir		The directory, absolute or relative to the working directory of this client
+	 * 
+	 * @return	The absolute path, null if the directory could not be changed to
+	 */
+	private String absoluteDirectory(String dir){
+		
+		FtpSession session = null;
+		boolean broken = false;
+		try {
+			session = acquireSession();
+			changeWorkingDirectory(session, dir);
+			return session.getWorkingDirectory();
+		}
+		catch (IllegalStateException e) {
+			broken = true;
+			fail("Could not change directory to " + dir, e);
+		}
+		catch (IOException e) {
+			broken = true;
+			fail("Could not change directory to " + dir, e);
+		}
+		catch (FTPIllegalReplyException e) {
+			broken = true;
+			fail("Could not change directory to " + dir, e);
+		}
+		catch (FTPException e) {
+			fail("Could not change directory to " + dir, e);
+		}
+		finally {
+			releaseSession(session, broken);
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Helping method that transfers a list of files between a local and a remote directory, using
+	 * up to parallelism sessions at once. Sessions come from the session pool if there is one,
+	 * otherwise a private pool is used and closed when done
+	 * 
+	 * @param	names			The names of the files to transfer
+	 * 
+	 * @param	localDir		The local directory
+	 * 
+	 * @param	remoteDir		The directory in the FTP server
+	 * 
+	 * @param	upload			If true files go from localDir to remoteDir, otherwise the other way round
+	 * 
+	 * @param	parallelism		The number of sessions transferring at once
+	 * 
+	 * @param	result			Where the result of each file is added
+	 * 
+	 * @return	The given result, finished
+	 */
+	private <T extends DirTransferResult> T transferDirFiles(List<String> names, final String localDir, final String remoteDir, final boolean upload, int parallelism, final T result){
+		
+		final Queue<String> queue = new ConcurrentLinkedQueue<String>(names);
+		final FtpSessionPool pool = this.sessionPool != null ? this.sessionPool : new FtpSessionPool(parallelism, parallelism, 60000);
+		int workers = Math.max(1, Math.min(parallelism, names.size()));
+		final AtomicInteger running = new AtomicInteger(workers);
+		
+		logger.info("Transferring " + names.size() + " files between " + localDir + " and " + remoteDir + " using " + workers + " sessions");
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		for (int i=0; i<workers; i++){
+			executor.execute(new Runnable() {
+				public void run() {
+					transferQueuedFiles(pool, queue, running, localDir, remoteDir, upload, result);
+				}
+			});
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			logger.error("Interrupted while transferring files between " + localDir + " and " + remoteDir);
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		
+		//files nobody could take care of
+		String name;
+		while ((name = queue.poll()) != null){
+			result.add(new TransferResult(name, 0, new IllegalStateException("No FTP session was available to transfer the file")));
+		}
+		if (pool != this.sessionPool){
+			pool.close();
+		}
+		if (upload){
+			forgetDirectory(remoteDir);
+		}
+		result.finish();
+		logger.info("Transfer between " + localDir + " and " + remoteDir + " finished: " + result);
+		return result;
+	}
+	
+	/**
+	 * Helping method run by each transfer thread, takes files from the queue and transfers them over
+	 * its own session until the queue is empty
+	 * 
+	 * @param	pool		The pool sessions are borrowed from
+	 * 
+	 * @param	queue		The names of the files left to transfer
+	 * 
+	 * @param	running		The number of transfer threads still running
+	 * 
+	 * @param	localDir	The local directory
+	 * 
+	 * @param	remoteDir	The directory in the FTP server
+	 * 
+	 * @param	upload		If true files go from localDir to remoteDir, otherwise the other way round
+	 * 
+	 * @param	result		Where the result of each file is added
+	 */
+	private void transferQueuedFiles(FtpSessionPool pool, Queue<String> queue, AtomicInteger running, String localDir, String remoteDir, boolean upload, DirTransferResult result){
+		
+		FtpSession session = null;
+		boolean left = false;
+		String name;
+		
+		try {
+			while ((name = queue.poll()) != null){
+				
+				long start = System.currentTimeMillis();
+				File file = new File(localDir, name);
+				Exception error = null;
+				boolean broken = false;
+				
+				try {
+					if (session == null){
+						session = pool.borrowSession(this);
+						changeWorkingDirectory(session, remoteDir);
+					}
+					if (upload){
+						transferFile(session.getClient(), file, name, true, false);
+					}
+					else{
+						transferFile(session.getClient(), file, name, false, false);
+					}
+				}
+				catch (IllegalStateException e) {
+					error = e;
+					broken = true;
+				}
+				catch (IOException e) {
+					error = e;
+					broken = true;
+				}
+				catch (FTPIllegalReplyException e) {
+					error = e;
+					broken = true;
+				}
+				catch (FTPException e) {
+					error = e;
+				}
+				catch (FTPDataTransferException e) {
+					error = e;
+					broken = true;
+				}
+				catch (FTPAbortedException e) {
+					error = e;
+					broken = true;
+				}
+				
+				long elapsed = System.currentTimeMillis() - start;
+				if (error == null){
+					result.add(new TransferResult(name, file.length(), elapsed));
+					if (logger.isInfoEnabled()){
+						logger.info("File " + name + " transferred successfully!");
+					}
+				}
+				else{
+					//could not get a session, most probably the server connection limit, leave the file to the other threads
+					if (session == null && leaveToOthers(running)){
+						queue.add(name);
+						left = true;
+						logger.info("Could not open another session to " + this.host + ", going on with the sessions already open");
+						break;
+					}
+					result.add(new TransferResult(name, elapsed, error));
+					logger.error("Could not transfer file " + name + " between " + localDir + " and " + remoteDir + ": " + error.getMessage());
+				}
+				
+				if (broken && session != null){
+					pool.invalidateSession(session);
+					session = null;
+				}
+			}
+		}
+		finally {
+			if (!left){
+				running.decrementAndGet();
+			}
+			if (session != null){
+				pool.returnSession(session);
+			}
+		}
+	}
+	
+	/**
+	 * Helping method that decreases the number of running transfer threads unless it is the last one
+	 * 
+	 * @param	running		The number of transfer threads still running
+	 * 
+	 * @return	<code>true</code> if the calling thread can stop, there are others left
+	 */
+	private static boolean leaveToOthers(AtomicInteger running){
+		
+		int current;
+		do {
+			current = running.get();
+			if (current <= 1){
+				return false;
+			}
+		} while (!running.compareAndSet(current, current - 1));
+		return true;
+	}
+	
+	/**
+	 * Task downloading a remote directory of a tree: lists it, forks a task for each subdirectory
+	 * and downloads its files in batches, so a huge directory does not flood the scheduler
+	 */
+	private class DownloadDirTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final FtpSessionPool pool;
+		private final String remoteDir;
+		private final File localDir;
+		private final String relativeDir;
+		private final DirTransferResult result;
+		
+		DownloadDirTask(FtpSessionPool pool, String remoteDir, File localDir, String relativeDir, DirTransferResult result){
+			this.pool = pool;
+			this.remoteDir = remoteDir;
+			this.localDir = localDir;
+			this.relativeDir = relativeDir;
+			this.result = result;
+		}
+		
+		protected void compute() {
+			
+			FTPFile[] entries = listTreeDirectory(this.pool, this.remoteDir);
+			if (entries == null){
+				this.result.add(new TransferResult(this.relativeDir, 0, new IllegalStateException("Could not list remote directory " + this.remoteDir)));
+				return;
+			}
+			if (!this.localDir.isDirectory() && !this.localDir.mkdirs()){
+				this.result.add(new TransferResult(this.relativeDir, 0, new IOException("Could not create local directory " + this.localDir)));
+				return;
+			}
+			
+			List<DownloadDirTask> subdirs = new ArrayList<DownloadDirTask>();
+			List<RecursiveAction> batch = new ArrayList<RecursiveAction>(TREE_BATCH_SIZE);
+			for (int i=0; i<entries.length; i++){
+				final String name = entries[i].getName();
+				if (name.equals(".") || name.equals("..")){
+					continue;
+				}
+				final String relative = this.relativeDir.isEmpty() ? name : this.relativeDir + "/" + name;
+				if (entries[i].getType() == FTPFile.TYPE_DIRECTORY){
+					DownloadDirTask subdir = new DownloadDirTask(this.pool, remotePath(this.remoteDir, name), new File(this.localDir, name), relative, this.result);
+					subdir.fork();
+					subdirs.add(subdir);
+				}
+				else if (entries[i].getType() == FTPFile.TYPE_FILE){
+					batch.add(new RecursiveAction() {
+						private static final long serialVersionUID = 1L;
+						protected void compute() {
+							DownloadDirTask.this.result.add(transferTreeFile(DownloadDirTask.this.pool, new File(DownloadDirTask.this.localDir, name), DownloadDirTask.this.remoteDir, relative, false, resume));
+						}
+					});
+					if (batch.size() == TREE_BATCH_SIZE){
+						invokeAll(batch);
+						batch.clear();
+					}
+				}
+			}
+			invokeAll(batch);
+			for (DownloadDirTask subdir : subdirs){
+				subdir.join();
+			}
+		}
+	}
+	
+	/**
+	 * Task deleting a remote directory of a tree: lists it, forks a task for each subdirectory and
+	 * for each batch of files, and removes the directory itself once all of them succeeded. When it
+	 * is not parallel the subdirectories and batches are deleted one after the other in the caller's thread
+	 */
+	private class DeleteDirTask extends RecursiveTask<Boolean> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final FtpSessionPool pool;
+		private final String remoteDir;
+		private final String relativeDir;
+		private final DeleteResult result;
+		private final boolean parallel;
+		
+		DeleteDirTask(FtpSessionPool pool, String remoteDir, String relativeDir, DeleteResult result, boolean parallel){
+			this.pool = pool;
+			this.remoteDir = remoteDir;
+			this.relativeDir = relativeDir;
+			this.result = result;
+			this.parallel = parallel;
+		}
+		
+		protected Boolean compute() {
+			
+			String label = this.relativeDir.isEmpty() ? this.remoteDir : this.relativeDir;
+			//a cached listing may miss entries, the directory would not be empty
+			forgetDirectory(this.remoteDir);
+			FTPFile[] entries = listTreeDirectory(this.pool, this.remoteDir);
+			if (entries == null){
+				this.result.addFailed(label, new IllegalStateException("Could not list remote directory " + this.remoteDir));
+				return false;
+			}
+			
+			List<RecursiveTask<Boolean>> tasks = new ArrayList<RecursiveTask<Boolean>>();
+			boolean empty = true;
+			List<String> batch = new ArrayList<String>(TREE_BATCH_SIZE);
+			for (int i=0; i<entries.length; i++){
+				String name = entries[i].getName();
+				if (name.equals(".") || name.equals("..")){
+					continue;
+				}
+				String relative = this.relativeDir.isEmpty() ? name : this.relativeDir + "/" + name;
+				if (entries[i].getType() == FTPFile.TYPE_DIRECTORY){
+					DeleteDirTask subdir = new DeleteDirTask(this.pool, remotePath(this.remoteDir, name), relative, this.result, this.parallel);
+					if (this.parallel){
+						subdir.fork();
+						tasks.add(subdir);
+					}
+					else{
+						empty &= subdir.compute();
+					}
+				}
+				else{
+					batch.add(name);
+					if (batch.size() == TREE_BATCH_SIZE){
+						empty &= deleteFiles(batch, tasks);
+						batch = new ArrayList<String>(TREE_BATCH_SIZE);
+					}
+				}
+			}
+			if (!batch.isEmpty()){
+				empty &= deleteFiles(batch, tasks);
+			}
+			
+			for (RecursiveTask<Boolean> task : tasks){
+				empty &= task.join();
+			}
+			if (!empty){
+				this.result.addFailed(label, new IllegalStateException("Directory " + this.remoteDir + " is not empty, some entries could not be deleted"));
+				return false;
+			}
+			return removeRemoteDirectory(this.pool, this.remoteDir, label, this.result);
+		}
+		
+		/**
+		 * Deletes a batch of files of this directory over a single session, in a forked task added to
+		 * the given ones when parallel
+		 * 
+		 * @return	<code>false</code> if some file could not be deleted, always <code>true</code> when forked
+		 */
+		private boolean deleteFiles(final List<String> names, List<RecursiveTask<Boolean>> tasks){
+			
+			if (!this.parallel){
+				return deleteRemoteFiles(this.pool, this.remoteDir, this.relativeDir, names, this.result);
+			}
+			RecursiveTask<Boolean> task = new RecursiveTask<Boolean>() {
+				private static final long serialVersionUID = 1L;
+				protected Boolean compute() {
+					return deleteRemoteFiles(DeleteDirTask.this.pool, DeleteDirTask.this.remoteDir, DeleteDirTask.this.relativeDir, names, DeleteDirTask.this.result);
+				}
+			};
+			task.fork();
+			tasks.add(task);
+			return true;
+		}
+	}
+	
+	/**
+	 * Helping method that deletes a batch of files of a remote directory over a session borrowed for
+	 * them. A file that can not be deleted is recorded and the rest are deleted anyway
+	 * 
+	 * @param	pool		The pool the session is borrowed from, null to use the session of this client
+	 * 
+	 * @param	dir			The directory of the files in the FTP server
+	 * 
+	 * @param	relativeDir	The path of the directory relative to the top of the tree
+	 * 
+	 * @param	names		The names of the files
+	 * 
+	 * @param	result		Where each file deleted or failed is recorded
+	 * 
+	 * @return	<code>true</code> if every file was deleted
+	 */
+	private boolean deleteRemoteFiles(FtpSessionPool pool, String dir, String relativeDir, List<String> names, DeleteResult result){
+		
+		FtpSession session = null;
+		boolean broken = false;
+		boolean deleted = true;
+		try {
+			for (int i=0; i<names.size(); i++){
+				String relative = relativeDir.isEmpty() ? names.get(i) : relativeDir + "/" + names.get(i);
+				try {
+					if (session == null){
+						broken = false;
+						session = borrowSession(pool);
+						changeWorkingDirectory(session, dir);
+					}
+					session.getClient().deleteFile(names.get(i));
+					result.addDeleted(relative, false);
+					continue;
+				}
+				catch (FTPException e) {
+					//refused for this file only, go on with the others
+					result.addFailed(relative, e);
+				}
+				catch (IllegalStateException e) {
+					broken = true;
+					result.addFailed(relative, e);
+				}
+				catch (IOException e) {
+					broken = true;
+					result.addFailed(relative, e);
+				}
+				catch (FTPIllegalReplyException e) {
+					broken = true;
+					result.addFailed(relative, e);
+				}
+				deleted = false;
+				logger.error("Could not delete file " + relative);
+				//go on with a new session
+				if (broken){
+					giveBackSession(pool, session, true);
+					session = null;
+				}
+			}
+		}
+		finally {
+			giveBackSession(pool, session, broken);
+		}
+		return deleted;
+	}
+	
+	/**
+	 * Helping method that removes an empty remote directory, from its parent directory as some servers
+	 * refuse to remove the working directory
+	 * 
+	 * @param	pool		The pool the session is borrowed from, null to use the session of this client
+	 * 
+	 * @param	dir			The directory in the FTP server
+	 * 
+	 * @param	label		The name the directory is recorded with
+	 * 
+	 * @param	result		Where the directory deleted or failed is recorded
+	 * 
+	 * @return	<code>true</code> if the directory was removed
+	 */
+	private boolean removeRemoteDirectory(FtpSessionPool pool, String dir, String label, DeleteResult result){
+		
+		String path = dir;
+		if (path.endsWith("/") && path.length() > 1){
+			path = path.substring(0, path.length() - 1);
+		}
+		if (path.equals("/")){
+			//the root itself is never removed
+			return true;
+		}
+		
+		FtpSession session = null;
+		boolean broken = true;
+		try {
+			session = borrowSession(pool);
+			int slash = path.lastIndexOf("/");
+			if (slash >= 0){
+				changeWorkingDirectory(session, slash == 0 ? "/" : path.substring(0, slash));
+				session.getClient().deleteDirectory(path.substring(slash + 1));
+			}
+			else{
+				//not a unix path, get out of it if we are inside
+				if (path.equals(session.getWorkingDirectory())){
+					session.getClient().changeDirectoryUp();
+					session.setWorkingDirectory(null);
+				}
+				session.getClient().deleteDirectory(path);
+			}
+			broken = false;
+			forgetDirectory(dir);
+			result.addDeleted(label, true);
+			if (logger.isInfoEnabled()){
+				logger.info("Directory removed successfully: " + dir);
+			}
+			return true;
+		}
+		catch (FTPException e) {
+			broken = false;
+			result.addFailed(label, e);
+		}
+		catch (IllegalStateException e) {
+			result.addFailed(label, e);
+		}
+		catch (IOException e) {
+			result.addFailed(label, e);
+		}
+		catch (FTPIllegalReplyException e) {
+			result.addFailed(label, e);
+		}
+		finally {
+			giveBackSession(pool, session, broken);
+		}
+		logger.error("Could not remove directory " + dir);
+		return false;
+	}
+	
+	/**
+	 * Helping method that borrows a session from the given pool, or takes the session of this client
+	 * when there is no pool
+	 * 
+	 * @param	pool		The pool, may be null
+	 * 
+	 * @return	The session, must be given back with giveBackSession
+	 */
+	private FtpSession borrowSession(FtpSessionPool pool) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException {
+		return pool != null ? pool.borrowSession(this) : acquireSession();
+	}
+	
+	/**
+	 * Helping method that gives back a session obtained with borrowSession
+	 * 
+	 * @param	pool		The pool, may be null
+	 * 
+	 * @param	session		The session, may be null
+	 * 
+	 * @param	broken		If true the session can not be trusted anymore
+	 */
+	private void giveBackSession(FtpSessionPool pool, FtpSession session, boolean broken){
+		
+		if (pool == null){
+			releaseSession(session, broken);
+		}
+		else if (broken){
+			pool.invalidateSession(session);
+		}
+		else{
+			pool.returnSession(session);
+		}
+	}
+	
+	/**
+	 * Helping method that transfers one file of a tree over a session borrowed for it, trying again
+	 * according to the retry policy when the transfer breaks
+	 * 
+	 * @param	pool		The pool the session is borrowed from
+	 * 
+	 * @param	localFile	The local file
+	 * 
+	 * @param	remoteDir	The directory of the file in the FTP server
+	 * 
+	 * @param	relative	The path of the file relative to the top of the tree, used to name the result
+	 * 
+	 * @param	upload		If true the file goes from localFile to remoteDir, otherwise the other way round
+	 * 
+	 * @param	resumeTransfer	If true a partial file left by a previous transfer is completed from the first attempt
+	 * 
+	 * @return	The result of the transfer
+	 */
+	private TransferResult transferTreeFile(FtpSessionPool pool, File localFile, String remoteDir, String relative, boolean upload, boolean resumeTransfer){
+		
+		long start = System.currentTimeMillis();
+		int attempt = 1;
+		while (true){
+			FtpSession session = null;
+			boolean broken = true;
+			Exception error = null;
+			try {
+				session = borrowSession(pool);
+				changeWorkingDirectory(session, remoteDir);
+				transferFile(session.getClient(), localFile, localFile.getName(), upload, resumeTransfer || attempt > 1);
+				broken = false;
+				if (logger.isInfoEnabled()){
+					logger.info("File " + relative + " transferred successfully!");
+				}
+				return new TransferResult(relative, localFile.length(), System.currentTimeMillis() - start);
+			}
+			catch (IllegalStateException e) {
+				error = e;
+			}
+			catch (IOException e) {
+				error = e;
+			}
+			catch (FTPIllegalReplyException e) {
+				error = e;
+			}
+			catch (FTPException e) {
+				//refused by the server, trying again will not help
+				broken = false;
+				logger.error("Could not transfer file " + relative + ": " + e.getMessage());
+				return new TransferResult(relative, System.currentTimeMillis() - start, e);
+			}
+			catch (FTPDataTransferException e) {
+				error = e;
+			}
+			catch (FTPAbortedException e) {
+				error = e;
+			}
+			finally {
+				giveBackSession(pool, session, broken);
+			}
+			if (!this.retryPolicy.shouldRetry(attempt) || !this.retryPolicy.pause(attempt)){
+				logger.error("Could not transfer file " + relative + ": " + error.getMessage());
+				return new TransferResult(relative, System.currentTimeMillis() - start, error);
+			}
+			if (logger.isInfoEnabled()){
+				logger.info("Transfer of file " + relative + " broken, trying again (attempt " + (attempt + 1) + ")");
+			}
+			attempt++;
+		}
+	}
+	
+	/**
+	 * Transfers a file of a TransferQueue over a session borrowed for it, trying again according to
+	 * the retry policy when the transfer breaks
+	 * 
+	 * @param	pool			The pool the session is borrowed from
+	 * 
+	 * @param	localFile		The local file
+	 * 
+	 * @param	remoteDir		The directory of the file in the FTP server
+	 * 
+	 * @param	upload			If true the file goes from localFile to remoteDir, otherwise the other way round
+	 * 
+	 * @param	resumeTransfer	If true a partial file left by a previous transfer is completed
+	 * 
+	 * @return	The result of the transfer
+	 */
+	TransferResult transferQueuedFile(FtpSessionPool pool, File localFile, String remoteDir, boolean upload, boolean resumeTransfer){
+		return transferTreeFile(pool, localFile, remoteDir, remotePath(remoteDir, localFile.getName()), upload, resumeTransfer || this.resume);
+	}
+	
+	/**
+	 * Helping method that lists a directory of a tree over a session borrowed for it
+	 * 
+	 * @param	pool		The pool the session is borrowed from
+	 * 
+	 * @param	dir			The directory in the FTP server
+	 * 
+	 * @return	The entries of the directory, null if it could not be listed
+	 */
+	private FTPFile[] listTreeDirectory(FtpSessionPool pool, String dir){
+		
+		FtpSession session = null;
+		boolean broken = true;
+		try {
+			session = borrowSession(pool);
+			changeWorkingDirectory(session, dir);
+			FTPFile[] entries = listDirectory(session);
+			broken = false;
+			return entries;
+		}
+		catch (IllegalStateException e) {
+			logger.error("Could not list files in " + dir + ": " + e.getMessage());
+		}
+		catch (IOException e) {
+			logger.error("Could not list files in " + dir + ": " + e.getMessage());
+		}
+		catch (FTPIllegalReplyException e) {
+			logger.error("Could not list files in " + dir + ": " + e.getMessage());
+		}
+		catch (FTPException e) {
+			broken = false;
+			logger.error("Could not list files in " + dir + ": " + e.getMessage());
+		}
+		catch (FTPDataTransferException e) {
+			logger.error("Could not list files in " + dir + ": " + e.getMessage());
+		}
+		catch (FTPAbortedException e) {
+			logger.error("Could not list files in " + dir + ": " + e.getMessage());
+		}
+		catch (FTPListParseException e) {
+			broken = false;
+			logger.error("Could not list files in " + dir + ": " + e.getMessage());
+		}
+		finally {
+			giveBackSession(pool, session, broken);
+		}
+		return null;
+	}
+	
+	/**
+	 * Helping method that makes sure a directory exists in the FTP server, creating it if it does not
+	 * 
+	 * @param	pool		The pool the session is borrowed from
+	 * 
+	 * @param	dir			The directory in the FTP server
+	 * 
+	 * @return	<code>true</code> if the directory exists now
+	 */
+	private boolean createRemoteDirectory(FtpSessionPool pool, String dir){
+		
+		FtpSession session = null;
+		boolean broken = true;
+		try {
+			session = borrowSession(pool);
+			try {
+				session.getClient().createDirectory(dir);
+			}
+			catch (FTPException e) {
+				//most probably it is already there, check it
+				changeWorkingDirectory(session, dir);
+			}
+			broken = false;
+			forgetDirectory(dir);
+			return true;
+		}
+		catch (IllegalStateException e) {
+			logger.error("Could not create directory " + dir + ": " + e.getMessage());
+		}
+		catch (IOException e) {
+			logger.error("Could not create directory " + dir + ": " + e.getMessage());
+		}
+		catch (FTPIllegalReplyException e) {
+			logger.error("Could not create directory " + dir + ": " + e.getMessage());
+		}
+		catch (FTPException e) {
+			broken = false;
+			logger.error("Could not create directory " + dir + ": " + e.getMessage());
+		}
+		finally {
+			giveBackSession(pool, session, broken);
+		}
+		return false;
+	}
+	
+	/**
+	 * Helping method that builds the path of a remote directory from its parent and a relative path
+	 * 
+	 * @param	parent		The directory in the FTP server
+	 * 
+	 * @param	relative	A local relative path, null or empty for the parent itself
+	 * 
+	 * @return	The path in the FTP server, always using '/' as separator
+	 */
+	private static String remotePath(String parent, Path relative){
+		
+		String path = parent;
+		if (relative != null){
+			for (Path part : relative){
+				if (!part.toString().isEmpty()){
+					path = remotePath(path, part.toString());
+				}
+			}
+		}
+		return path;
+	}
+	
+	/**
+	 * Helping method that builds the path of an entry of a remote directory
+	 * 
+	 * @param	parent		The directory in the FTP server
+	 * 
+	 * @param	name		The name of the entry
+	 * 
+	 * @return	The path of the entry in the FTP server
+	 */
+	private static String remotePath(String parent, String name){
+		return parent.endsWith("/") ? parent + name : parent + "/" + name;
+	}
+	
+	/**
+	 * Helping method that downloads a byte range of a file over its own session
+	 * 
+	 * @param	pool		The pool the session is borrowed from
+	 * 
+	 * @param	file		The name of the file to download
+	 * 
+	 * @param	sourceDir	The path where the file is located in the FTP server
+	 * 
+	 * @param	channel		The channel of the local file
+	 * 
+	 * @param	start		Offset of the first byte of the range
+	 * 
+	 * @param	length		Length of the range
+	 * 
+	 * @return	<code>true</code> if the whole range was written to the local file
+	 */
+	private boolean downloadSegment(FtpSessionPool pool, String file, String sourceDir, FileChannel channel, long start, long length){
+		
+		FtpSession session = null;
+		boolean broken = false;
+		SegmentOutputStream out = new SegmentOutputStream(channel, start, length);
+		try {
+			session = pool.borrowSession(this);
+			changeWorkingDirectory(session, sourceDir);
+			chooseDataConnection(session.getClient());
+			session.getClient().download(file, throttle(out), start, transferListener(file, false));
+			if (!out.isComplete()){
+				logger.error("Segment of file " + file + " starting at " + start + " ended early");
+				return false;
+			}
+			return true;
+		}
+		catch (FTPDataTransferException e) {
+			//the transfer is cut on purpose once the range is full, the session is left in an unknown state
+			broken = true;
+			if (out.isComplete()){
+				return true;
+			}
+			fail("Could not download segment of file " + file + " starting at " + start, e);
+			return false;
+		}
+		catch (FTPAbortedException e) {
+			broken = true;
+			fail("Could not download segment of file " + file + " starting at " + start, e);
+			return false;
+		}
+		catch (IllegalStateException e) {
+			broken = true;
+			fail("Could not download segment of file " + file + " starting at " + start, e);
+			return false;
+		}
+		catch (IOException e) {
+			broken = true;
+			fail("Could not download segment of file " + file + " starting at " + start, e);
+			return false;
+		}
+		catch (FTPIllegalReplyException e) {
+			broken = true;
+			fail("Could not download segment of file " + file + " starting at " + start, e);
+			return false;
+		}
+		catch (FTPException e) {
+			//some servers answer the cut transfer with an error reply
+			broken = true;
+			if (out.isComplete()){
+				return true;
+			}
+			fail("Could not download segment of file " + file + " starting at " + start, e);
+			return false;
+		}
+		finally {
+			if (broken){
+				pool.invalidateSession(session);
+			}
+			else{
+				pool.returnSession(session);
+			}
+		}
+	}
+	
+	/**
+	 * Helping method that uploads from a stream or downloads to a stream. A broken transfer is not
+	 * tried again, as the data already consumed from or written to the stream can not be taken back
+	 * 
+	 * @param	remotePath		The path of the file in the FTP server
+	 * 
+	 * @param	in				The stream to upload, null when downloading
+	 * 
+	 * @param	out				The stream to download to, null when uploading
+	 * 
+	 * @return	<code>true</code> if the transfer was successful
+	 */
+	private boolean transferStream(String remotePath, InputStream in, OutputStream out){
+		
+		//check that given params are not empty
+		if (remotePath.isEmpty() || (in == null && out == null)){
+			logger.error("Some of the given parameters are void. Transfer aborted...");
+			return false;
+		}
+		//check logged state
+		if (!this.logged){
+			logger.error("You can not transfer files if you are not logged in. Use login method first.");
+			return false;
+		}
+		
+		//split the path in directory and file name
+		String dir = null;
+		String name = remotePath;
+		int slash = remotePath.lastIndexOf("/");
+		if (slash >= 0){
+			dir = slash == 0 ? "/" : remotePath.substring(0, slash);
+			name = remotePath.substring(slash + 1);
+		}
+		
+		FtpSession session = null;
+		boolean broken = false;
+		try {
+			session = acquireSession();
+			if (dir != null){
+				changeWorkingDirectory(session, dir);
+			}
+			chooseDataConnection(session.getClient());
+			this.activeTransfers.put(Thread.currentThread(), session.getClient());
+			if (in != null){
+				session.getClient().upload(name, throttle(in), 0, 0, transferListener(remotePath, true));
+				if (session.getWorkingDirectory() != null){
+					forgetDirectory(session.getWorkingDirectory());
+				}
+				if (logger.isInfoEnabled()){
+					logger.info("Stream uploaded successfully to " + remotePath);
+				}
+			}
+			else{
+				OutputStream throttled = throttle(out);
+				session.getClient().download(name, throttled, 0, transferListener(remotePath, false));
+				throttled.flush();
+				if (logger.isInfoEnabled()){
+					logger.info("File " + remotePath + " downloaded successfully to stream");
+				}
+			}
+			return true;
+		}
+		catch (IllegalStateException e) {
+			broken = true;
+			fail("Could not transfer " + remotePath + " from/to stream", e);
+		}
+		catch (IOException e) {
+			broken = true;
+			fail("Could not transfer " + remotePath + " from/to stream", e);
+		}
+		catch (FTPIllegalReplyException e) {
+			broken = true;
+			fail("Could not transfer " + remotePath + " from/to stream", e);
+		}
+		catch (FTPException e) {
+			fail("Could not transfer " + remotePath + " from/to stream", e);
+		}
+		catch (FTPDataTransferException e) {
+			broken = true;
+			fail("Could not transfer " + remotePath + " from/to stream", e);
+		}
+		catch (FTPAbortedException e) {
+			broken = true;
+			fail("Could not transfer " + remotePath + " from/to stream", e);
+		}
+		finally {
+			this.activeTransfers.remove(Thread.currentThread());
+			releaseSession(session, broken);
+		}
+		return false;
+	}
+	
+	/**
+	 * Times every control command of an FTPClient object, from the moment it is sent until its final
+	 * (not 1xx) reply is received, and reports it to the metrics
+	 */
+	private class CommandTimer implements FTPCommunicationListener {
+		
+		/**
+		 * The command waiting for its reply, null if there is none
+		 */
+		private String command;
+		/**
+		 * When the command was sent, from System.nanoTime
+		 */
+		private long sent;
+		/**
+		 * The capability the reply of the command tells about, null if it tells about none
+		 */
+		private String capability;
+		/**
+		 * Features read so far from the reply to FEAT
+		 */
+		private Set<String> features;
+		/**
+		 * When the PASV or PORT of the data connection being set up was sent, 0 if there is none
+		 */
+		private long setupStart;
+		/**
+		 * If true the data connection being set up is passive
+		 */
+		private boolean setupPassive;
+		/**
+		 * If true the command using the data connection being set up has been sent
+		 */
+		private boolean setupCommandSent;
+		
+		/**
+		 * @return	The client this timer reports to
+		 */
+		FtpClient owner(){
+			return FtpClient.this;
+		}
+		
+		public synchronized void sent(String statement) {
+			
+			int space = statement.indexOf(' ');
+			this.command = (space < 0 ? statement : statement.substring(0, space)).toUpperCase();
+			this.sent = System.nanoTime();
+			this.capability = capabilityOf(this.command, statement);
+			this.features = this.command.equals("FEAT") ? new LinkedHashSet<String>() : null;
+			
+			if (this.setupStart != 0 && this.setupCommandSent){
+				//the client gave up on the connection without telling, it timed out
+				setupEnded(false);
+			}
+			if (this.command.equals("PASV") || this.command.equals("PORT")){
+				this.setupStart = this.sent;
+				this.setupPassive = this.command.equals("PASV");
+				this.setupCommandSent = false;
+			}
+			else if (this.setupStart != 0 && DATA_COMMANDS.contains(this.command)){
+				this.setupCommandSent = true;
+			}
+		}
+		
+		public synchronized void received(String statement) {
+			
+			//features come one per line, indented, between the first and last lines of the reply
+			if (this.features != null && statement.startsWith(" ")){
+				this.features.add(statement.trim());
+				return;
+			}
+			//the server connected to us, or is about to, once it says the transfer starts
+			if (this.setupCommandSent && !this.setupPassive && statement.startsWith("1")){
+				setupEnded(true);
+			}
+			//only the last line of a final reply, "ddd text", ends the command
+			if (this.command == null || statement.length() < 4 || statement.charAt(3) != ' ' || statement.charAt(0) < '2' || statement.charAt(0) > '5'){
+				return;
+			}
+			FtpMetrics current = metrics;
+			if (current != null){
+				current.commandCompleted(this.command, System.nanoTime() - this.sent);
+			}
+			int code = Integer.parseInt(statement.substring(0, 3));
+			if (this.features != null && code == 211){
+				capabilities().discovered(this.features);
+			}
+			if (this.capability != null){
+				capabilities().replied(this.capability, code);
+			}
+			if (this.setupCommandSent){
+				if (code == 425){
+					setupEnded(false);
+				}
+				else if (code < 300){
+					setupEnded(true);
+				}
+				else{
+					//refused for other reasons, it tells nothing about the connection
+					this.setupStart = 0;
+					this.setupCommandSent = false;
+				}
+			}
+			this.command = null;
+			this.capability = null;
+			this.features = null;
+		}
+		
+		/**
+		 * Called when the passive data connection being set up is connected
+		 */
+		synchronized void dataConnected(){
+			
+			if (this.setupStart != 0 && this.setupPassive){
+				setupEnded(true);
+			}
+		}
+		
+		/**
+		 * Called when the passive data connection being set up could not be connected
+		 */
+		synchronized void dataFailed(){
+			
+			if (this.setupStart != 0 && this.setupPassive){
+				setupEnded(false);
+			}
+		}
+		
+		/**
+		 * Helping method that reports the data connection being set up to the strategy of the server
+		 */
+		private void setupEnded(boolean success){
+			
+			DataConnectionStrategy strategy = DataConnectionStrategy.forServer(host, port);
+			long nanos = System.nanoTime() - this.setupStart;
+			if (success){
+				strategy.completed(this.setupPassive, nanos);
+			}
+			else{
+				strategy.failed(this.setupPassive, nanos);
+			}
+			FtpMetrics current = metrics;
+			if (current != null){
+				current.dataConnectionSetUp(this.setupPassive, nanos, success);
+			}
+			this.setupStart = 0;
+			this.setupCommandSent = false;
+		}
+		
+		/**
+		 * Helping method that gives the capability whose support the reply to a command shows,
+		 * for the commands ftp4j sends on its own when the server advertises them
+		 */
+		private String capabilityOf(String command, String statement){
+			
+			if (command.equals("MLSD") || command.equals("SIZE") || command.equals("MDTM")){
+				return command;
+			}
+			if (command.equals("REST")){
+				return "REST STREAM";
+			}
+			if (statement.equalsIgnoreCase("MODE Z")){
+				return "MODE Z";
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * Connector of the sessions wrapping the one of ftp4j, telling the command timer whether passive
+	 * data connections could be connected. With the plain ftp4j connector they are connected with a
+	 * timeout, with the buffers it would use and the read timeout of the control connection. Other
+	 * connectors (proxies, tunnels) connect them themselves, with their own settings
+	 */
+	private class DataConnector implements FTPConnector {
+		
+		/**
+		 * Socket buffers of the data connections of the plain ftp4j connector
+		 */
+		private static final int SOCKET_BUFFER_SIZE = 512 * 1024;
+		
+		private final FTPConnector connector;
+		private final CommandTimer timer;
+		/**
+		 * Read timeout of the control connection, 0 for none
+		 */
+		private volatile int readTimeout;
+		
+		DataConnector(FTPConnector connector, CommandTimer timer){
+			this.connector = connector;
+			this.timer = timer;
+			this.readTimeout = 0;
+		}
+		
+		public Socket connectForCommunicationChannel(String host, int port) throws IOException {
+			
+			Socket socket = this.connector.connectForCommunicationChannel(host, port);
+			this.readTimeout = socket.getSoTimeout();
+			return socket;
+		}
+		
+		public Socket connectForDataTransferChannel(String host, int port) throws IOException {
+			
+			Socket socket;
+			try {
+				if (this.connector.getClass() == DirectConnector.class){
+					socket = connectDirectly(host, port);
+				}
+				else{
+					socket = this.connector.connectForDataTransferChannel(host, port);
+				}
+			}
+			catch (IOException e) {
+				this.timer.dataFailed();
+				throw e;
+			}
+			this.timer.dataConnected();
+			return socket;
+		}
+		
+		/**
+		 * Helping method that connects a data connection as the plain ftp4j connector does, with a timeout
+		 */
+		private Socket connectDirectly(String host, int port) throws IOException {
+			
+			Socket socket = new Socket();
+			try {
+				socket.setReceiveBufferSize(SOCKET_BUFFER_SIZE);
+				socket.setSendBufferSize(SOCKET_BUFFER_SIZE);
+				socket.setSoTimeout(this.readTimeout);
+				socket.connect(new InetSocketAddress(host, port), dataConnectTimeout);
+			}
+			catch (IOException e) {
+				socket.close();
+				throw e;
+			}
+			return socket;
+		}
+	}
+	
+	/**
+	 * Times a data transfer, from its creation right before the transfer command is sent, and reports
+	 * its outcome to the metrics
+	 */
+	private class TransferTimer implements FTPDataTransferListener {
+		
+		private final String name;
+		private final boolean upload;
+		private final long start;
+		private long firstByte;
+		private long bytes;
+		
+		TransferTimer(String name, boolean upload){
+			this.name = name;
+			this.upload = upload;
+			this.start = System.nanoTime();
+			this.firstByte = -1;
+			this.bytes = 0;
+		}
+		
+		public void started() {
+		}
+		
+		public void transferred(int length) {
+			if (this.firstByte < 0){
+				this.firstByte = System.nanoTime() - this.start;
+			}
+			this.bytes += length;
+		}
+		
+		public void completed() {
+			finished(true);
+		}
+		
+		public void aborted() {
+			finished(false);
+		}
+		
+		public void failed() {
+			finished(false);
+		}
+		
+		private void finished(boolean success) {
+			
+			long elapsed = System.nanoTime() - this.start;
+			FtpMetrics current = metrics;
+			if (current != null){
+				current.transferCompleted(this.name, this.upload, this.bytes, elapsed, this.firstByte < 0 ? elapsed : this.firstByte, success);
+			}
+		}
+	}
+	
+	/**
+	 * Helping method that gives the listener timing a data transfer
+	 * 
+	 * @param	name		The name of the file transferred
+	 * 
+	 * @param	upload		If true the file goes to the server
+	 * 
+	 * @return	The listener, null when there are no metrics to report to
+	 */
+	private FTPDataTransferListener transferListener(String name, boolean upload){
+		return this.metrics != null ? new TransferTimer(name, upload) : null;
+	}
+	
+	/**
+	 * Aborts the file transfer the given thread is doing through this client, if any. The thread gets
+	 * an FTPAbortedException, uploadFile and downloadFile do not try again if the thread is also interrupted
+	 * 
+	 * @param	thread		The thread doing the transfer
+	 * 
+	 * @return	<code>true</code> if there was a transfer to abort
+	 */
+	boolean abortTransfer(Thread thread){
+		
+		FTPClient ftpClient = this.activeTransfers.get(thread);
+		if (ftpClient == null){
+			return false;
+		}
+		try {
+			ftpClient.abortCurrentDataTransfer(true);
+			logger.info("Transfer aborted");
+			return true;
+		}
+		catch (IOException e) {
+			logger.error("Could not abort the transfer: " + e.getMessage());
+		}
+		catch (FTPIllegalReplyException e) {
+			logger.error("Could not abort the transfer: " + e.getMessage());
+		}
+		return false;
+	}
+	
+	/**
+	 * Helping method that gives the rate limiters a new transfer goes through: its own one if a
+	 * transfer rate limit is set, the one of the host and the global one
+	 * 
+	 * @return	The limiters
+	 */
+	private RateLimiter[] rateLimiters(){
+		
+		RateLimiter host = RateLimiter.forHost(this.host == null ? "" : this.host);
+		long rate = this.transferRateLimit;
+		if (rate > 0){
+			return new RateLimiter[]{new RateLimiter(rate), host, RateLimiter.global()};
+		}
+		return new RateLimiter[]{host, RateLimiter.global()};
+	}
+	
+	/**
+	 * Helping method that throttles the stream an upload reads from
+	 * 
+	 * @param	in		The stream, closed when the returned one is closed
+	 * 
+	 * @return	The throttled stream
+	 */
+	private InputStream throttle(InputStream in){
+		return new ThrottledStreams.ThrottledInputStream(in, rateLimiters());
+	}
+	
+	/**
+	 * Helping method that throttles the stream a download writes to
+	 * 
+	 * @param	out		The stream, closed when the returned one is closed
+	 * 
+	 * @return	The throttled stream
+	 */
+	private OutputStream throttle(OutputStream out){
+		return new ThrottledStreams.ThrottledOutputStream(out, rateLimiters());
+	}
+	
+	/**
+	 * Helping method that transfers a file over the given session. When resuming, a download goes on
+	 * from the size of the local file (REST) and an upload appends to the remote file from its size (SIZE + APPE).
+	 * If checksums are on, a file whose checksum does not match the server one is transferred again
+	 * from scratch as the retry policy says
+	 * 
+	 * @param	ftpClient		The FTPClient object of the session, already in the remote directory
+	 * 
+	 * @param	localFile		The local file
+	 * 
+	 * @param	remoteName		The name of the file in the FTP server
+	 * 
+	 * @param	upload			If true the file goes from localFile to remoteName, otherwise the other way round
+	 * 
+	 * @param	resumeTransfer	If true a partial file left by a previous transfer is completed instead of transferred again
+	 */
+	private void transferFile(FTPClient ftpClient, File localFile, String remoteName, boolean upload, boolean resumeTransfer) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException, FTPDataTransferException, FTPAbortedException {
+		
+		//known while it runs, so it can be aborted from another thread
+		this.activeTransfers.put(Thread.currentThread(), ftpClient);
+		chooseDataConnection(ftpClient);
+		try {
+			if (useGzip(ftpClient, remoteName) && transferGzip(ftpClient, localFile, remoteName, upload)){
+				return;
+			}
+			checksum algorithm = this.checksumAlgorithm;
+			int attempt = 1;
+			while (true){
+				Checksums.Digest digest = algorithm == checksum.NONE ? null : Checksums.newDigest(algorithm);
+				copyFile(ftpClient, localFile, remoteName, upload, resumeTransfer, digest);
+				if (digest == null){
+					return;
+				}
+				String expected = expectedChecksum(ftpClient, remoteName, upload, digest);
+				if (expected == null || expected.equals(digest.hex())){
+					return;
+				}
+				logger.error("Checksum of " + remoteName + " does not match on attempt " + attempt + ": " + digest.hex() + ", the server says " + expected);
+				if (!this.retryPolicy.shouldRetry(attempt) || !this.retryPolicy.pause(attempt)){
+					//do not leave a wrong copy behind to be taken as complete
+					if (upload){
+						try {
+							ftpClient.deleteFile(remoteName);
+						}
+						catch (FTPException e) {
+							logger.error("Could not delete the wrong copy of " + remoteName + " from the server");
+						}
+					}
+					else{
+						localFile.delete();
+					}
+					throw new ChecksumMismatchException(remoteName, expected, digest.hex());
+				}
+				resumeTransfer = false;
+				attempt++;
+			}
+		}
+		finally {
+			this.activeTransfers.remove(Thread.currentThread());
+		}
+	}
+	
+	/**
+	 * Helping method that copies a file over the given session once, feeding the checksum with every
+	 * byte of the file, including the ones already in place when the transfer is resumed
+	 * 
+	 * @param	ftpClient		The FTPClient object of the session, already in the remote directory
+	 * 
+	 * @param	localFile		The local file
+	 * 
+	 * @param	remoteName		The name of the file in the FTP server
+	 * 
+	 * @param	upload			If true the file goes from localFile to remoteName, otherwise the other way round
+	 * 
+	 * @param	resumeTransfer	If true a partial file left by a previous transfer is completed instead of transferred again
+	 * 
+	 * @param	digest			The checksum of the file, null if it is not wanted
+	 */
+	private void copyFile(FTPClient ftpClient, File localFile, String remoteName, boolean upload, boolean resumeTransfer, Checksums.Digest digest) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException, FTPDataTransferException, FTPAbortedException {
+		
+		if (upload){
+			long offset = 0;
+			if (resumeTransfer){
+				try {
+					offset = ftpClient.fileSize(remoteName);
+				}
+				catch (FTPException e) {
+					//not in the server yet
+					offset = 0;
+				}
+				if (offset > localFile.length()){
+					offset = 0;
+				}
+			}
+			if (offset == 0 || offset < localFile.length()){
+				InputStream in = FileChannelStreams.openInput(localFile);
+				if (digest != null){
+					//the part skipped by a resumed upload goes through it as well
+					in = new Checksums.ChecksumInputStream(in, digest);
+				}
+				in = throttle(in);
+				try {
+					if (offset == 0){
+						ftpClient.upload(remoteName, in, 0, 0, transferListener(remoteName, true));
+					}
+					else{
+						if (logger.isInfoEnabled()){
+							logger.info("Resuming upload of file " + remoteName + " from byte " + offset);
+						}
+						ftpClient.append(remoteName, in, offset, transferListener(remoteName, true));
+					}
+				}
+				finally {
+					in.close();
+				}
+			}
+			else if (digest != null){
+				//already complete
+				Checksums.update(digest, localFile, localFile.length());
+			}
+		}
+		else{
+			long offset = 0;
+			boolean complete = false;
+			if (resumeTransfer && ftpClient.isResumeSupported() && !Boolean.FALSE.equals(capabilities().supports("REST STREAM")) && localFile.exists()){
+				offset = localFile.length();
+				long size = ftpClient.fileSize(remoteName);
+				//already complete
+				complete = offset == size;
+				if (offset > size){
+					offset = 0;
+				}
+			}
+			if (digest != null && offset > 0){
+				Checksums.update(digest, localFile, offset);
+			}
+			if (complete){
+				return;
+			}
+			if (offset > 0){
+				if (logger.isInfoEnabled()){
+					logger.info("Resuming download of file " + remoteName + " from byte " + offset);
+				}
+			}
+			OutputStream out = FileChannelStreams.openOutput(localFile, offset > 0);
+			if (digest != null){
+				out = new Checksums.ChecksumOutputStream(out, digest);
+			}
+			out = throttle(out);
+			try {
+				ftpClient.download(remoteName, out, offset, transferListener(remoteName, false));
+			}
+			finally {
+				out.close();
+			}
+		}
+	}
+	
+	/**
+	 * Helping method that finds the checksum of the copy of a file in the server: asked to the server,
+	 * or read from its sidecar file. After an upload the sidecar file is written if it is wanted
+	 * 
+	 * @param	ftpClient		The FTPClient object of the session, already in the remote directory
+	 * 
+	 * @param	remoteName		The name of the file in the FTP server
+	 * 
+	 * @param	upload			If true the file has just been uploaded
+	 * 
+	 * @param	digest			The checksum of the bytes transferred
+	 * 
+	 * @return	The checksum, null if there is no way to know it and the file can not be checked
+	 */
+	private String expectedChecksum(FTPClient ftpClient, String remoteName, boolean upload, Checksums.Digest digest) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException, FTPDataTransferException, FTPAbortedException {
+		
+		checksum algorithm = this.checksumAlgorithm;
+		String expected = Checksums.serverChecksum(ftpClient, remoteName, algorithm, capabilities());
+		if (upload){
+			if (this.checksumSidecar && (expected == null || expected.equals(digest.hex()))){
+				chooseDataConnection(ftpClient);
+				Checksums.writeSidecar(ftpClient, remoteName, algorithm, digest.hex());
+			}
+		}
+		else if (expected == null){
+			chooseDataConnection(ftpClient);
+			expected = Checksums.sidecarChecksum(ftpClient, remoteName, algorithm);
+		}
+		if (expected == null){
+			logger.warn("No " + algorithm + " checksum of " + remoteName + " in the server, it could not be checked");
+		}
+		return expected;
+	}
+	
+	/**
+	 * Helping method that sets up the compression of a transfer: MODE Z is turned on or off in the
+	 * FTPClient object, and the caller is told if the client has to gzip the file itself
+	 * 
+	 * @param	ftpClient	The FTPClient object of the session
+	 * 
+	 * @param	name		The name of the file, files already compressed are left alone
+	 * 
+	 * @return	<code>true</code> if the file has to be gzipped by the client
+	 */
+	private boolean useGzip(FTPClient ftpClient, String name){
+		
+		if (this.compressionMode == compression.NONE || isCompressed(name)){
+			ftpClient.setCompressionEnabled(false);
+			return false;
+		}
+		if (this.compressionMode != compression.GZIP && ftpClient.isCompressionSupported() && !Boolean.FALSE.equals(capabilities().supports("MODE Z"))){
+			ftpClient.setCompressionEnabled(true);
+			return false;
+		}
+		ftpClient.setCompressionEnabled(false);
+		if (this.compressionMode == compression.MODE_Z){
+			if (logger.isDebugEnabled()){
+				logger.debug("Server does not support MODE Z, transferring " + name + " uncompressed");
+			}
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Helping method that tells if a file is already compressed, judging by its extension
+	 * 
+	 * @param	name		The name of the file
+	 * 
+	 * @return	<code>true</code> if compressing it again would only waste time
+	 */
+	private boolean isCompressed(String name){
+		
+		int dot = name.lastIndexOf('.');
+		return dot >= 0 && this.compressedExtensions.contains(name.substring(dot + 1).toLowerCase());
+	}
+	
+	/**
+	 * Helping method that transfers a file gzipped by the client. Uploads are stored as remoteName.gz,
+	 * downloads fetch remoteName.gz and gunzip it into the local file. Partial files are never resumed
+	 * 
+	 * @param	ftpClient		The FTPClient object of the session, already in the remote directory
+	 * 
+	 * @param	localFile		The local file
+	 * 
+	 * @param	remoteName		The name of the uncompressed file in the FTP server
+	 * 
+	 * @param	upload			If true the file goes from localFile to the server, otherwise the other way round
+	 * 
+	 * @return	<code>false</code> if there is no gzipped copy to download, the file has to be downloaded as it is
+	 */
+	private boolean transferGzip(FTPClient ftpClient, File localFile, String remoteName, boolean upload) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException, FTPDataTransferException, FTPAbortedException {
+		
+		String gzipName = remoteName + GZIP_SUFFIX;
+		if (upload){
+			InputStream in = throttle(GzipStreams.compress(FileChannelStreams.openInput(localFile), this.compressionLevel));
+			try {
+				ftpClient.upload(gzipName, in, 0, 0, transferListener(gzipName, true));
+			}
+			finally {
+				in.close();
+			}
+			return true;
+		}
+		
+		try {
+			ftpClient.fileSize(gzipName);
+		}
+		catch (FTPException e) {
+			if (logger.isDebugEnabled()){
+				logger.debug("No gzipped copy of " + remoteName + " in the server, downloading it as it is");
+			}
+			return false;
+		}
+		OutputStream out = throttle(new GzipStreams.GunzipOutputStream(FileChannelStreams.openOutput(localFile, false)));
+		boolean done = false;
+		try {
+			ftpClient.download(gzipName, out, 0, transferListener(gzipName, false));
+			done = true;
+		}
+		finally {
+			if (done){
+				//checks the CRC of the whole file
+				out.close();
+			}
+			else{
+				try {
+					out.close();
+				}
+				catch (IOException e) {
+					//the transfer already failed, that is what the caller is told
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Helping method that gets a session back to work after a failed transfer. The same session is
+	 * kept if it still answers, otherwise it is discarded and a new one is opened
+	 * 
+	 * @param	failed		The session where the transfer failed
+	 * 
+	 * @param	dir			The remote directory the new session has to change to
+	 * 
+	 * @return	The session to go on with
+	 */
+	private FtpSession recoverSession(FtpSession failed, String dir) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException {
+		
+		//reuse the session if it survived the failed transfer
+		try {
+			failed.getClient().noop();
+			return failed;
+		}
+		catch (IllegalStateException e) {
+			logger.info("Session lost after a failed transfer, opening a new one");
+		}
+		catch (IOException e) {
+			logger.info("Session lost after a failed transfer, opening a new one");
+		}
+		catch (FTPIllegalReplyException e) {
+			logger.info("Session lost after a failed transfer, opening a new one");
+		}
+		catch (FTPException e) {
+			logger.info("Session lost after a failed transfer, opening a new one");
+		}
+		FtpSession session;
+		if (failed == this.ownSession){
+			//still ours, the FTPClient field itself has to be connected again
+			session = failed;
+			boolean reconnected = false;
+			try {
+				this.client.abruptlyCloseCommunication();
+				connectClient(this.client);
+				String home = loginClient(this.client);
+				this.ownSession.setHomeDirectory(home);
+				this.ownSession.setWorkingDirectory(home);
+				reconnected = true;
+			}
+			finally {
+				if (!reconnected){
+					releaseSession(failed, true);
+				}
+			}
+		}
+		else{
+			releaseSession(failed, true);
+			session = acquireSession();
+		}
+		boolean ready = false;
+		try {
+			changeWorkingDirectory(session, dir);
+			ready = true;
+			return session;
+		}
+		finally {
+			if (!ready){
+				releaseSession(session, true);
+			}
+		}
+	}
+	
+	/**
+	 * Helping method that lists the working directory with MLSD, unless the server is known not to
+	 * have it. A server advertising MLSD but rejecting it, or giving a reply that can not be parsed,
+	 * is listed again with LIST and MLSD is not used with it any more
+	 * 
+	 * @param	ftpClient	The FTPClient object of the session
+	 * 
+	 * @return	The entries of the directory
+	 */
+	private FTPFile[] listClient(FTPClient ftpClient) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException, FTPDataTransferException, FTPAbortedException, FTPListParseException {
+		
+		chooseDataConnection(ftpClient);
+		ServerCapabilities capabilities = capabilities();
+		if (Boolean.FALSE.equals(capabilities.supports("MLSD"))){
+			ftpClient.setMLSDPolicy(FTPClient.MLSD_NEVER);
+			return ftpClient.list();
+		}
+		try {
+			return ftpClient.list();
+		}
+		catch (FTPException e) {
+			//the reply to MLSD has just been recorded, other failures are not ours to handle
+			if (!Boolean.FALSE.equals(capabilities.supports("MLSD"))){
+				throw e;
+			}
+		}
+		catch (FTPListParseException e) {
+			if (!Boolean.TRUE.equals(capabilities.supports("MLSD"))){
+				throw e;
+			}
+			capabilities.failed("MLSD");
+		}
+		logger.warn("Server " + this.host + " does not list with MLSD as it advertises, using LIST");
+		ftpClient.setMLSDPolicy(FTPClient.MLSD_NEVER);
+		return ftpClient.list();
+	}
+	
+	/**
+	 * Helping method that lists the current directory of a session. A listing still valid in the listing
+	 * cache is used as is. When there is a manifest trusting directory dates and the directory has not
+	 * been modified since it was last listed, the manifest is used instead of LIST
+	 * 
+	 * @param	session		The session, already in the directory
+	 * 
+	 * @return	The entries of the directory
+	 */
+	private FTPFile[] listDirectory(FtpSession session) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException, FTPDataTransferException, FTPAbortedException, FTPListParseException {
+		
+		FTPClient ftpClient = session.getClient();
+		String dir = session.getWorkingDirectory();
+		String key = directoryKey(dir);
+		FTPFile[] entries;
+		
+		//a recent listing needs no round trip at all
+		if (this.listingCache != null){
+			entries = this.listingCache.get(key);
+			if (entries != null){
+				return entries;
+			}
+		}
+		if (this.manifest == null){
+			entries = listClient(ftpClient);
+			if (this.listingCache != null){
+				this.listingCache.put(key, entries);
+			}
+			return entries;
+		}
+		
+		long modified = -1;
+		ServerCapabilities capabilities = capabilities();
+		if (this.manifest.isTrustDirectoryDates() && !Boolean.FALSE.equals(capabilities.supports("MDTM-DIR")) && !Boolean.FALSE.equals(capabilities.supports("MDTM"))){
+			try {
+				modified = ftpClient.modifiedDate(".").getTime();
+				capabilities.worked("MDTM-DIR");
+			}
+			catch (FTPException e) {
+				//the server does not give dates of directories, it has to be listed every time
+				capabilities.failed("MDTM-DIR");
+				modified = -1;
+			}
+		}
+		entries = this.manifest.getEntries(key, modified);
+		if (entries != null){
+			if (logger.isInfoEnabled()){
+				logger.info("Directory " + dir + " not modified since last listed, using the manifest");
+			}
+		}
+		else{
+			entries = listClient(ftpClient);
+			this.manifest.record(key, modified, entries);
+		}
+		if (this.listingCache != null){
+			this.listingCache.put(key, entries);
+		}
+		return entries;
+	}
+	
+	/**
+	 * Helping method that drops a directory from the listing cache and the manifest, if any, after it was written to
+	 * 
+	 * @param	dir		The directory in the FTP server
+	 */
+	private void forgetDirectory(String dir){
+		
+		String key = directoryKey(dir);
+		if (this.listingCache != null){
+			this.listingCache.invalidate(key);
+		}
+		if (this.manifest != null){
+			this.manifest.remove(key);
+		}
+	}
+	
+	/**
+	 * Helping method that builds the key of a directory in the listing cache and the manifest, from
+	 * its absolute path so every spelling of the same directory shares it
+	 * 
+	 * @param	dir		The directory in the FTP server, absolute or relative to the login directory
+	 * 
+	 * @return	A key made of host:port:user:connectionType:absoluteDir
+	 */
+	private String directoryKey(String dir){
+		
+		String absolute = resolvePath(this.homeDirectory, dir);
+		if (absolute == null){
+			//not a unix path, kept as given
+			absolute = dir.endsWith("/") && dir.length() > 1 ? dir.substring(0, dir.length() - 1) : dir;
+		}
+		return getServerKey() + ":" + absolute;
+	}
+	
+	/**
+	 * Helping method that changes the working directory of a session, only if necessary
+	 * 
+	 * @param	session		The session
+	 * 
+	 * @param	dir			The directory to change to, absolute or relative to the login directory of the session
+	 */
+	private void changeWorkingDirectory(FtpSession session, String dir) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException {
+		
+		//a session opened by another client of the pool tells us the login directory too
+		if (this.homeDirectory == null){
+			this.homeDirectory = session.getHomeDirectory();
+		}
+		//relative paths mean the same whatever directory a previous user of the session left it in
+		String target = resolvePath(session.getHomeDirectory(), dir);
+		if (target != null && target.equals(session.getWorkingDirectory())){
+			return;
+		}
+		if (logger.isInfoEnabled()){
+			logger.info("Changing directory to  " + (target != null ? target : dir));
+		}
+		session.setWorkingDirectory(null);
+		if (target != null){
+			session.getClient().changeDirectory(target);
+			session.setWorkingDirectory(target);
+		}
+		else{
+			//servers not using unix paths get the path as given, from the login directory, and tell where we are
+			if (session.getHomeDirectory() != null){
+				session.getClient().changeDirectory(session.getHomeDirectory());
+			}
+			session.getClient().changeDirectory(dir);
+			session.setWorkingDirectory(session.getClient().currentDirectory());
+		}
+	}
+	
+	/**
+	 * Helping method that resolves a remote path against a directory, removing "." and ".." parts,
+	 * repeated slashes and the trailing slash. Names are kept as given, servers may be case sensitive
+	 * 
+	 * @param	base		The absolute directory relative paths start from, null if it is not known
+	 * 
+	 * @param	dir			The path, absolute or relative
+	 * 
+	 * @return	The absolute path, null if it can not be worked out because the paths are not unix ones
+	 */
+	private static String resolvePath(String base, String dir){
+		
+		String path;
+		if (dir.startsWith("/")){
+			path = dir;
+		}
+		else if (base != null && base.startsWith("/")){
+			path = base + "/" + dir;
+		}
+		else{
+			return null;
+		}
+		LinkedList<String> parts = new LinkedList<String>();
+		for (String part : path.split("/")){
+			if (part.isEmpty() || part.equals(".")){
+				continue;
+			}
+			if (part.equals("..")){
+				parts.pollLast();
+			}
+			else{
+				parts.add(part);
+			}
+		}
+		StringBuilder builder = new StringBuilder();
+		for (String part : parts){
+			builder.append('/').append(part);
+		}
+		return builder.length() == 0 ? "/" : builder.toString();
+	}
+	
+	/**
+	 * Lists a directory of the FTP server handing its entries to a visitor one by one. MLSD is
+	 * used if the server has it, LIST otherwise. ftp4j reads the whole reply before parsing it, but
+	 * no array of the entries is kept by the caller and the visitor can stop at any entry. The
+	 * session is held until the listing ends, the visitor must not call this client from its thread
+	 * 
+	 * @param	dir			The directory in the FTP server
+	 * 
+	 * @param	visitor		Receives each entry
+	 * 
+	 * @return	<code>true</code> if the directory could be listed, even if the visitor stopped early
+	 */
+	public boolean visitDirectory(String dir, ListingVisitor visitor){
+		
+		//check that given params are not empty
+		if (dir.isEmpty() || visitor == null){
+			logger.error("Some of the given parameters are void. Listing aborted...");
+			return false;
+		}
+		//check logged state
+		if (!this.logged){
+			logger.error("You can not list directories if you are not logged in. Use login method first.");
+			return false;
+		}
+		
+		FtpSession session = null;
+		boolean broken = false;
+		try {
+			session = acquireSession();
+			changeWorkingDirectory(session, dir);
+			FTPFile[] entries = listDirectory(session);
+			for (int i=0; i<entries.length; i++){
+				if (!visitor.visit(entries[i])){
+					break;
+				}
+			}
+			return true;
+		}
+		catch (IllegalStateException e) {
+			broken = true;
+			fail("Could not list files in " + dir, e);
+		}
+		catch (IOException e) {
+			broken = true;
+			fail("Could not list files in " + dir, e);
+		}
+		catch (FTPIllegalReplyException e) {
+			broken = true;
+			fail("Could not list files in " + dir, e);
+		}
+		catch (FTPException e) {
+			fail("Could not list files in " + dir, e);
+		}
+		catch (FTPDataTransferException e) {
+			broken = true;
+			fail("Could not list files in " + dir, e);
+		}
+		catch (FTPAbortedException e) {
+			broken = true;
+			fail("Could not list files in " + dir, e);
+		}
+		catch (FTPListParseException e) {
+			fail("Could not list files in " + dir, e);
+		}
+		finally {
+			releaseSession(session, broken);
+		}
+		return false;
+	}
+	
+	/**
+	 * Helping method that copies an entry of a listing
+	 * 
+	 * @param	entry	The entry
+	 * 
+	 * @return	A new FTPFile object with the same name, type, size, date and link
+	 */
+	private FTPFile copyEntry(FTPFile entry){
+		
+		FTPFile copy = new FTPFile();
+		copy.setName(entry.getName());
+		copy.setType(entry.getType());
+		copy.setSize(entry.getSize());
+		copy.setModifiedDate(entry.getModifiedDate());
+		copy.setLink(entry.getLink());
+		return copy;
+	}
+	
+	/**
+	 * Helping method that gets the files contained in a directory of the FTP server
+	 * 
+	 * @param	dir			The directory in the FTP server
+	 * 
+	 * @param	complete	If true, sizes and dates missing in the listing are asked with SIZE and MDTM
+	 * 
+	 * @return	The files by name, null if the directory could not be listed
+	 */
+	private Map<String, FTPFile> listRemoteFiles(String dir, boolean complete){
+		
+		FtpSession session = null;
+		boolean broken = false;
+		try {
+			session = acquireSession();
+			FTPClient client = session.getClient();
+			changeWorkingDirectory(session, dir);
+			
+			Map<String, FTPFile> files = new LinkedHashMap<String, FTPFile>();
+			FTPFile[] entries = listDirectory(session);
+			for (int i=0; i<entries.length; i++){
+				//check that we have a file
+				if (entries[i].getType() == FTPFile.TYPE_FILE){
+					FTPFile entry = entries[i];
+					//the listing may be shared through the cache, it is not ours to change
+					if (complete && (entry.getSize() < 0 || entry.getModifiedDate() == null)){
+						entry = copyEntry(entry);
 					}
-					
-					
-					//First delete all files within directory, most FTP servers wont delete a directory not empty
-					//list files in source directory	
-					Object o = Class.forName("it.sauronsoftware.ftp4j.FTPFile");
-					logger.info("Instantiated FTPFile " + o.toString() + " list correctly. Gathering list of files");
-					list = client.list();
-					
-					//check that there was something in the folder specified
-					if (list.length!=0){
-						//download each file
-						for (int i=0; i<list.length; i++){	
-							//check that we have a file
-							if (list[i].getType()==FTPFile.TYPE_FILE){
-								//get the filename
-								String name = list[i].getName();
-								//Delete file
-								this.client.deleteFile(name);
-								logger.info("File " + name  + " deleted successfully!");
-							}
-						}
-						
-						logger.info("All files deleted successfully from " + sourceDir );
-						
-						//Need to go up at least one level in the hierarchy to delete the folder, cannot be in CWD
-						client.changeDirectoryUp();
-						//check current directory
-						String parent = client.currentDirectory();
-						logger.info("Changed to parent directory: " + parent);
-						
-						//check if last char is /, then remove it
-						if (sourceDir.endsWith("/")){
-							sourceDir = sourceDir.substring(0, sourceDir.length() - 1);
-						}
-						
-						//get name of children directory to delete, what is right hand of last / occurence 
-						String childrenDir = sourceDir.substring(sourceDir.lastIndexOf("/") + 1);
-						//check if we actually had a children dir
-						if (childrenDir != null && !childrenDir.isEmpty()){
-							//delete the directory
-							this.client.deleteDirectory(childrenDir);
-						}
-						//if not it probably means that sourceDir was a first level directory different from / 
-						else{
-							//delete the directory
-							this.client.deleteDirectory(sourceDir);
-						}
-						
-						logger.info("Directory removed successfully: " + sourceDir);
-						return true;
+					if (complete && entry.getSize() < 0){
+						entry.setSize(client.fileSize(entry.getName()));
 					}
-					//if there were no files, abort download
-					else{
-						logger.error("There were no files in the given directory. Trying to delete the directory...");
-						//delete the directory
-						this.client.deleteDirectory(sourceDir);
-						logger.info("Directory " + sourceDir + " deleted successfully!");
-						return true;
+					if (complete && entry.getModifiedDate() == null){
+						entry.setModifiedDate(client.modifiedDate(entry.getName()));
 					}
-				} 
-				catch (IllegalStateException e1) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or deleting a file went wrong. Aborting Deletion");
-					e1.printStackTrace();
-					return false;
-				} 
-				catch (IOException e1) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or deleting a file went wrong. Aborting Deletion");
-					e1.printStackTrace();
-					return false;
-				} 
-				catch (FTPIllegalReplyException e1) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or deleting a file went wrong. Aborting Deletion");
-					e1.printStackTrace();
-					return false;
-				} 
-				catch (FTPException e1) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or deleting a file went wrong. Aborting Dletion");
-					e1.printStackTrace();
-					return false;
-				} 
-				catch (FTPAbortedException e1) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or deleting a file went wrong. Aborting Dletion");
-					e1.printStackTrace();
-					return false;
-				} 
-				catch (FTPListParseException e1) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or deleting a file went wrong. Aborting Dletion");
-					e1.printStackTrace();
-					return false;
-				}
-				catch (FTPDataTransferException e) {
-					logger.error("Listing for files, changing directory to " + sourceDir + " or deleting a file went wrong. Aborting Dletion");
-					e.printStackTrace();
-					return false;
+					files.put(entry.getName(), entry);
 				}
-				catch (ClassNotFoundException e) {
-					logger.error("Could not instantiate FTPClient, thus no list of files could be made, aborting.");
-					e.printStackTrace();
-					return false;
-				} 
-			}	
-			else{
-				logger.error("You can not delete files if you are not logged in. Use login method first.");
-				return false;
-			}		
+			}
+			return files;
+		}
+		catch (IllegalStateException e) {
+			broken = true;
+			fail("Could not list files in " + dir, e);
+		}
+		catch (IOException e) {
+			broken = true;
+			fail("Could not list files in " + dir, e);
+		}
+		catch (FTPIllegalReplyException e) {
+			broken = true;
+			fail("Could not list files in " + dir, e);
+		}
+		catch (FTPException e) {
+			fail("Could not list files in " + dir, e);
+		}
+		catch (FTPDataTransferException e) {
+			broken = true;
+			fail("Could not list files in " + dir, e);
+		}
+		catch (FTPAbortedException e) {
+			broken = true;
+			fail("Could not list files in " + dir, e);
+		}
+		catch (FTPListParseException e) {
+			fail("Could not list files in " + dir, e);
 		}
+		finally {
+			releaseSession(session, broken);
+		}
+		return null;
 	}
 	
 	
+	/**
+	 * Helping method that tells if a file has to be transferred when syncing
+	 * 
+	 * @param	localFile		The local copy of the file
+	 * 
+	 * @param	remoteFile		The copy in the FTP server, null if there is none
+	 * 
+	 * @param	upload			If true the local copy is the source, otherwise the remote one is
+	 * 
+	 * @return	<code>true</code> if the destination copy is missing or out of date
+	 */
+	private boolean needsSync(File localFile, FTPFile remoteFile, boolean upload){
+		
+		if (remoteFile == null || !localFile.exists()){
+			return true;
+		}
+		if (localFile.length() != remoteFile.getSize()){
+			return true;
+		}
+		//same size, without a date there is nothing else to compare
+		if (remoteFile.getModifiedDate() == null){
+			return false;
+		}
+		long remoteTime = remoteFile.getModifiedDate().getTime();
+		if (upload){
+			return localFile.lastModified() > remoteTime + this.syncTimeTolerance;
+		}
+		return remoteTime > localFile.lastModified() + this.syncTimeTolerance;
+	}
+	
 	/**
 	 * Helping method that gets the names of the files contained in a specified path
 	 * 
@@ -998,12 +4341,12 @@ public class FtpClient {
 		if (!dirName.isEmpty()){
 			
 			File dir = new File(dirName);
-				
+			
 			// This filter only returns files
 			FileFilter fileFilter = new FileFilter() {
-			    public boolean accept(File file) {
-			        return file.isFile();
-			    }
+				public boolean accept(File file) {
+					return file.isFile();
+				}
 			};
 			
 			// The list of files can also be retrieved as File objects
@@ -1011,18 +4354,20 @@ public class FtpClient {
 			
 			//Check that there are some files 
 			if (files == null) {
-			    // Either dir does not exist or is not a directory
+				// Either dir does not exist or is not a directory
 				logger.error("Specified directory is empty");
 				return ret;
 			} 
 			else {
-			    
+				
 				for (int i=0; i<files.length; i++) {
-			        // Get filename of file or directory
-			        String filename = files[i].getName();
-			        System.out.println("File found in path " + dirName +", name is: " + filename);
-			        ret.add(filename);
-			    }
+					// Get filename of file or directory
+					String filename = files[i].getName();
+					if (logger.isDebugEnabled()){
+						logger.debug("File found in path " + dirName +", name is: " + filename);
+					}
+					ret.add(filename);
+				}
 			}
 		}
 		//return list
@@ -1032,57 +4377,39 @@ public class FtpClient {
 	
 	
 	/**
-	 * Checks that the given directories names are not the same
-	 * 
-	 * @param 	sourceDir		The first directory name
+	 * Helping method that reports a failure without slowing down the caller: a single line at ERROR
+	 * level, the stack trace only at DEBUG level, and the exception kept as the last error of the thread
 	 * 
-	 * @param	destDir			The second directory name
+	 * @param	message		What went wrong
 	 * 
-	 * @return	<code>true</code> if both names are equal
+	 * @param	e			The exception that made it go wrong
 	 */
-	private boolean checkSameFolder(String sourceDir, String destDir){
-		
-		//Check that given parameters are not empty
-		if (sourceDir.isEmpty() || destDir.isEmpty()){
-			
-			logger.error("None of the given names can be empty. Aborting comparisson");
-			return false;
-		}
-		else{
-			//To avoid modification of passed references
-			String first = sourceDir;
-			String second = destDir;
-			//remove possible trailing slash from beginning and end before comparing, check is not root directory /
-			if (first.startsWith("/") && first.length() > 1){
-				first = first.substring(1);
-			}
-			else{
-				if (first.endsWith("/") && first.length() > 1){
-					first = first.substring(0, first.length()-1);
-				}
-			}
-			if (second.startsWith("/") && second.length() > 1){
-				second = second.substring(1);
-			}
-			else{
-				if (second.endsWith("/") && second.length() > 1){
-					second = second.substring(0, second.length()-1);
-				}
-			}
-			//comparisson 
-			if (first.equalsIgnoreCase(second)){
-				logger.info("Given directories, " + sourceDir + " and " + destDir + " are most surely the same");
-				return true;
-			}
-			else{
-				logger.info("Given directories, " + sourceDir + " and " + destDir + " are most surely not the same");
-				return false;
-			}
+	private void fail(String message, Exception e){
 		
+		this.lastError.set(e);
+		logger.error(message + ": " + e);
+		if (logger.isDebugEnabled()){
+			logger.debug(message, e);
 		}
-		
 	}
 	
+	/**
+	 * Gives the exception behind the last operation of the calling thread that failed, so the cause
+	 * of a <code>false</code> returned by this client can be told apart without parsing the log
+	 * 
+	 * @return	The exception, null if no operation of the thread failed with one
+	 */
+	public Exception getLastError(){
+		return this.lastError.get();
+	}
+	
+	/**
+	 * Forgets the last error of the calling thread, so a pooled thread starting a new operation does
+	 * not report the failure of a previous one
+	 */
+	void clearLastError(){
+		this.lastError.remove();
+	}
 	
 	/**
 	 *  Getters and setters
@@ -1159,4 +4486,161 @@ public class FtpClient {
 	public void setConnectionType(secure connectionType) {
 		this.connectionType = connectionType;
 	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	public boolean isResume() {
+		return resume;
+	}
+
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	public long getSyncTimeTolerance() {
+		return syncTimeTolerance;
+	}
+
+	public void setSyncTimeTolerance(long syncTimeTolerance) {
+		this.syncTimeTolerance = syncTimeTolerance;
+	}
+
+	public RemoteManifest getManifest() {
+		return manifest;
+	}
+
+	public void setManifest(RemoteManifest manifest) {
+		this.manifest = manifest;
+	}
+
+	public ListingCache getListingCache() {
+		return listingCache;
+	}
+
+	public void setListingCache(ListingCache listingCache) {
+		this.listingCache = listingCache;
+	}
+
+	public FtpSessionPool getSessionPool() {
+		return sessionPool;
+	}
+
+	public void setSessionPool(FtpSessionPool sessionPool) {
+		this.sessionPool = sessionPool;
+	}
+
+	public FtpMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(FtpMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public compression getCompression() {
+		return compressionMode;
+	}
+
+	public void setCompression(compression compressionMode) {
+		this.compressionMode = compressionMode;
+	}
+
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	public Set<String> getCompressedExtensions() {
+		return new HashSet<String>(compressedExtensions);
+	}
+
+	public void setCompressedExtensions(Set<String> compressedExtensions) {
+		
+		Set<String> copy = new HashSet<String>();
+		for (String extension : compressedExtensions){
+			copy.add(extension.toLowerCase());
+		}
+		this.compressedExtensions = Collections.unmodifiableSet(copy);
+	}
+
+	public long getTransferRateLimit() {
+		return transferRateLimit;
+	}
+
+	public void setTransferRateLimit(long transferRateLimit) {
+		this.transferRateLimit = transferRateLimit;
+	}
+
+	public SSLContext getSslContext() {
+		return sslContext;
+	}
+
+	public void setSslContext(SSLContext sslContext) {
+		this.sslContext = sslContext;
+	}
+
+	public String getTrustStore() {
+		return trustStore;
+	}
+
+	public void setTrustStore(String trustStore) {
+		this.trustStore = trustStore;
+	}
+
+	public String getTrustStorePassword() {
+		return trustStorePassword;
+	}
+
+	public void setTrustStorePassword(String trustStorePassword) {
+		this.trustStorePassword = trustStorePassword;
+	}
+
+	public checksum getChecksum() {
+		return checksumAlgorithm;
+	}
+
+	public void setChecksum(checksum checksumAlgorithm) {
+		this.checksumAlgorithm = checksumAlgorithm;
+	}
+
+	public boolean isChecksumSidecar() {
+		return checksumSidecar;
+	}
+
+	public void setChecksumSidecar(boolean checksumSidecar) {
+		this.checksumSidecar = checksumSidecar;
+	}
+
+	public dataConnection getDataConnection() {
+		return dataConnectionMode;
+	}
+
+	public void setDataConnection(dataConnection dataConnectionMode) {
+		this.dataConnectionMode = dataConnectionMode;
+	}
+
+	public int getDataConnectTimeout() {
+		return dataConnectTimeout;
+	}
+
+	public void setDataConnectTimeout(int dataConnectTimeout) {
+		this.dataConnectTimeout = dataConnectTimeout;
+	}
+
+	public int getMaxSessions() {
+		return maxSessions;
+	}
+
+	public void setMaxSessions(int maxSessions) {
+		this.maxSessions = maxSessions;
+	}
 }
@@ -0,0 +1,66 @@
+package org.ftp.simpleclient;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Receives the timings measured by an FtpClient: connection, login and TLS handshake durations,
+ * the latency of each control command, the setup of each data connection and the outcome of each
+ * data transfer. Implementations decide where the figures go, JmxFtpMetrics publishes them as an
+ * MBean. Methods are called from every thread using the client, so implementations must be thread
+ * safe and quick.
+ * All durations are in nanoseconds
+ *
+ */
+public interface FtpMetrics {
+
+	/**
+	 * Called when a connection to the FTP server has been established, welcome message included
+	 *
+	 * @param	nanos		Time spent connecting
+	 */
+	void connected(long nanos);
+
+	/**
+	 * Called when a session has logged in
+	 *
+	 * @param	nanos		Time spent in USER and PASS
+	 */
+	void loggedIn(long nanos);
+
+	/**
+	 * Called when a TLS handshake has completed, on the control or on a data connection
+	 *
+	 * @param	nanos		Time spent in the handshake
+	 */
+	void handshakeCompleted(long nanos);
+
+	/**
+	 * Called when the final reply to a control command has been received
+	 *
+	 * @param	command		The command, i.e. CWD, PWD, LIST, STOR, RETR or DELE
+	 * @param	nanos		Time from the command being sent to its final reply
+	 */
+	void commandCompleted(String command, long nanos);
+
+	/**
+	 * Called when a data connection has been set up, or could not be
+	 *
+	 * @param	passive		If true it was a passive connection, otherwise an active one
+	 * @param	nanos		Time from PASV or PORT until it could carry data, or until it failed
+	 * @param	success		If false the connection could not be set up
+	 */
+	void dataConnectionSetUp(boolean passive, long nanos, boolean success);
+
+	/**
+	 * Called when a data transfer has ended, successfully or not
+	 *
+	 * @param	name			The name of the file transferred
+	 * @param	upload			If true the file went to the server
+	 * @param	bytes			Bytes moved through the data connection
+	 * @param	nanos			Time spent in the whole transfer
+	 * @param	firstByteNanos	Time until the first byte was moved
+	 * @param	success			If false the transfer failed or was aborted
+	 */
+	void transferCompleted(String name, boolean upload, long bytes, long nanos, long firstByteNanos, boolean success);
+}
@@ -0,0 +1,96 @@
+package org.ftp.simpleclient;
+
+import it.sauronsoftware.ftp4j.FTPClient;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * A connected and logged in FTPClient object, along the data required to pool it
+ *
+ */
+class FtpSession {
+
+	/**
+	 * The connected and logged in FTPClient object
+	 */
+	private final FTPClient client;
+	/**
+	 * The key of the pool this session belongs to, host:port:user:connectionType:passwordHash
+	 */
+	private final String key;
+	/**
+	 * Last time (in millis) this session was handed out or given back
+	 */
+	private long lastUsed;
+	/**
+	 * Directory the session landed in when it logged in, relative paths start from it. Null if it is not known
+	 */
+	private String homeDirectory;
+	/**
+	 * Working directory of the session as far as we know, null if it has to be asked with PWD
+	 */
+	private String workingDirectory;
+
+	/**
+	 * Constructor, wraps an already connected and logged in FTPClient object
+	 *
+	 * @param	client		The FTPClient object
+	 * @param	key			The pool key for the session
+	 *
+	 */
+	FtpSession(FTPClient client, String key){
+
+		this.client = client;
+		this.key = key;
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Marks the session as used right now
+	 */
+	void touch(){
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Tells for how long the session has been unused
+	 *
+	 * @return	The idle time in milliseconds
+	 */
+	long getIdleTime(){
+		return System.currentTimeMillis() - this.lastUsed;
+	}
+
+	/**
+	 *  Getters and setters
+	 *
+	 */
+	FTPClient getClient() {
+		return client;
+	}
+
+	String getKey() {
+		return key;
+	}
+
+	long getLastUsed() {
+		return lastUsed;
+	}
+
+	String getHomeDirectory() {
+		return homeDirectory;
+	}
+
+	void setHomeDirectory(String homeDirectory) {
+		this.homeDirectory = homeDirectory;
+	}
+
+	String getWorkingDirectory() {
+		return workingDirectory;
+	}
+
+	void setWorkingDirectory(String workingDirectory) {
+		this.workingDirectory = workingDirectory;
+	}
+}
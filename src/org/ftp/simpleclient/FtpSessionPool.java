@@ -0,0 +1,418 @@
+package org.ftp.simpleclient;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import it.sauronsoftware.ftp4j.FTPClient;
+import it.sauronsoftware.ftp4j.FTPException;
+import it.sauronsoftware.ftp4j.FTPIllegalReplyException;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * A bounded pool of connected and logged in FTP sessions, keyed by host, port, user, connection
+ * type and password. A pool can be shared by several FtpClient objects, so jobs pointing to
+ * the same server do not pay the connection, TLS handshake and login round trips every time.
+ *
+ */
+public class FtpSessionPool {
+
+	/**
+	 * A logger object
+	 */
+	private static final Logger logger = Logger.getLogger(FtpSessionPool.class);
+
+	/**
+	 * Idle sessions for each key, most recently used first
+	 */
+	private final Map<String, LinkedList<FtpSession>> idle;
+	/**
+	 * Permits for each key, bounds how many sessions can be in use at once
+	 */
+	private final Map<String, Semaphore> permits;
+	/**
+	 * Maximum number of sessions in use at the same time for a given key
+	 */
+	private int maxActive;
+	/**
+	 * Maximum number of idle sessions kept for a given key
+	 */
+	private int maxIdle;
+	/**
+	 * Time in milliseconds after which an idle session is evicted
+	 */
+	private long idleTimeout;
+	/**
+	 * Idle sessions older than this (in milliseconds) are checked with NOOP before being handed out
+	 */
+	private long validationInterval;
+	/**
+	 * Time in milliseconds to wait for a free session before giving up
+	 */
+	private long borrowTimeout;
+
+	/**
+	 * Constructor, sets up the pool with default values
+	 *
+	 */
+	public FtpSessionPool(){
+
+		this(4, 4, 60000);
+	}
+
+	/**
+	 * Constructor initializes the pool with given parameters
+	 *
+	 * @param	maxActive		Maximum number of sessions in use at once per server/user
+	 * @param	maxIdle			Maximum number of idle sessions kept per server/user
+	 * @param	idleTimeout		Time in milliseconds after which an idle session is closed
+	 *
+	 */
+	public FtpSessionPool(int maxActive, int maxIdle, long idleTimeout){
+
+		this.idle = new HashMap<String, LinkedList<FtpSession>>();
+		this.permits = new HashMap<String, Semaphore>();
+		this.maxActive = maxActive;
+		this.maxIdle = maxIdle;
+		this.idleTimeout = idleTimeout;
+		this.validationInterval = 5000;
+		this.borrowTimeout = 30000;
+	}
+
+	/**
+	 * Hands out a connected and logged in session for the server the given FtpClient points to.
+	 * An idle session is reused when possible, otherwise a new one is opened
+	 *
+	 * @param	owner		The FtpClient object holding the connection parameters
+	 *
+	 * @return	A session ready to be used, must be given back with returnSession or invalidateSession
+	 *
+	 * @throws	IllegalStateException	If no session was available before borrowTimeout
+	 */
+	FtpSession borrowSession(FtpClient owner) throws IllegalStateException, IOException, FTPIllegalReplyException, FTPException {
+
+		String key = owner.getSessionKey();
+		Semaphore semaphore = getPermits(key);
+
+		//wait for a free slot
+		try {
+			if (!semaphore.tryAcquire(this.borrowTimeout, TimeUnit.MILLISECONDS)){
+				throw new IllegalStateException("No FTP session available for " + key + " after " + this.borrowTimeout + " ms");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for an FTP session for " + key);
+		}
+
+		try {
+			//reuse an idle session if there is a valid one
+			FtpSession session;
+			while ((session = pollIdle(key)) != null){
+				if (validate(session)){
+					session.touch();
+					//it may have been opened by another client of the pool
+					owner.bindSession(session.getClient());
+					return session;
+				}
+				close(session);
+			}
+
+			//nothing to reuse, open a new one
+			session = owner.openSession(key);
+			logger.info("Opened new pooled FTP session for " + key);
+			return session;
+		}
+		catch (IllegalStateException e) {
+			semaphore.release();
+			throw e;
+		}
+		catch (IOException e) {
+			semaphore.release();
+			throw e;
+		}
+		catch (FTPIllegalReplyException e) {
+			semaphore.release();
+			throw e;
+		}
+		catch (FTPException e) {
+			semaphore.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gives back a session that is still usable, so it can be handed out again
+	 *
+	 * @param	session		The session to give back
+	 *
+	 */
+	void returnSession(FtpSession session){
+
+		if (session == null){
+			return;
+		}
+
+		boolean keep = false;
+		if (session.getClient().isConnected() && session.getClient().isAuthenticated()){
+			session.touch();
+			synchronized (this.idle) {
+				LinkedList<FtpSession> sessions = getIdle(session.getKey());
+				if (sessions.size() < this.maxIdle){
+					sessions.addFirst(session);
+					keep = true;
+				}
+			}
+		}
+		if (!keep){
+			close(session);
+		}
+		getPermits(session.getKey()).release();
+		evict();
+	}
+
+	/**
+	 * Discards a session that can not be trusted anymore, i.e. after a broken transfer
+	 *
+	 * @param	session		The session to discard
+	 *
+	 */
+	void invalidateSession(FtpSession session){
+
+		if (session == null){
+			return;
+		}
+		close(session);
+		getPermits(session.getKey()).release();
+	}
+
+	/**
+	 * Closes every idle session that has not been used for longer than idleTimeout
+	 *
+	 */
+	public void evict(){
+
+		LinkedList<FtpSession> stale = new LinkedList<FtpSession>();
+		synchronized (this.idle) {
+			for (LinkedList<FtpSession> sessions : this.idle.values()){
+				Iterator<FtpSession> iterator = sessions.iterator();
+				while (iterator.hasNext()){
+					FtpSession session = iterator.next();
+					if (session.getIdleTime() > this.idleTimeout){
+						iterator.remove();
+						stale.add(session);
+					}
+				}
+			}
+		}
+		for (FtpSession session : stale){
+			logger.info("Evicting idle FTP session for " + session.getKey());
+			close(session);
+		}
+	}
+
+	/**
+	 * Closes every idle session in the pool. Sessions in use are closed when given back
+	 *
+	 */
+	public void close(){
+
+		LinkedList<FtpSession> all = new LinkedList<FtpSession>();
+		synchronized (this.idle) {
+			for (LinkedList<FtpSession> sessions : this.idle.values()){
+				all.addAll(sessions);
+				sessions.clear();
+			}
+		}
+		for (FtpSession session : all){
+			close(session);
+		}
+		logger.info("FTP session pool closed, " + all.size() + " idle sessions terminated");
+	}
+
+	/**
+	 * Tells how many idle sessions are kept for the given key
+	 *
+	 * @param	key		The pool key, host:port:user:connectionType:passwordHash
+	 *
+	 * @return	The number of idle sessions
+	 */
+	public int getIdleCount(String key){
+		synchronized (this.idle) {
+			LinkedList<FtpSession> sessions = this.idle.get(key);
+			return sessions == null ? 0 : sessions.size();
+		}
+	}
+
+	/**
+	 * Helping method that takes the most recently used idle session for a key
+	 *
+	 * @param	key		The pool key
+	 *
+	 * @return	An idle session or null if there is none
+	 */
+	private FtpSession pollIdle(String key){
+		synchronized (this.idle) {
+			LinkedList<FtpSession> sessions = this.idle.get(key);
+			if (sessions == null || sessions.isEmpty()){
+				return null;
+			}
+			return sessions.removeFirst();
+		}
+	}
+
+	/**
+	 * Helping method that checks an idle session is still alive, sending a NOOP only if it has
+	 * been idle for longer than validationInterval
+	 *
+	 * @param	session		The session to check
+	 *
+	 * @return	<code>true</code> if the session can be used
+	 */
+	private boolean validate(FtpSession session){
+
+		FTPClient client = session.getClient();
+		if (!client.isConnected() || !client.isAuthenticated() || session.getIdleTime() > this.idleTimeout){
+			return false;
+		}
+		if (session.getIdleTime() < this.validationInterval){
+			return true;
+		}
+		try {
+			client.noop();
+			return true;
+		}
+		catch (IllegalStateException e) {
+			logger.info("Pooled FTP session for " + session.getKey() + " did not answer NOOP, discarding it");
+		}
+		catch (IOException e) {
+			logger.info("Pooled FTP session for " + session.getKey() + " did not answer NOOP, discarding it");
+		}
+		catch (FTPIllegalReplyException e) {
+			logger.info("Pooled FTP session for " + session.getKey() + " did not answer NOOP, discarding it");
+		}
+		catch (FTPException e) {
+			logger.info("Pooled FTP session for " + session.getKey() + " did not answer NOOP, discarding it");
+		}
+		return false;
+	}
+
+	/**
+	 * Helping method that closes a session, quietly if the server does not answer
+	 *
+	 * @param	session		The session to close
+	 *
+	 */
+	private void close(FtpSession session){
+
+		FTPClient client = session.getClient();
+		if (!client.isConnected()){
+			return;
+		}
+		try {
+			client.disconnect(true);
+		}
+		catch (IllegalStateException e) {
+			client.abruptlyCloseCommunication();
+		}
+		catch (IOException e) {
+			client.abruptlyCloseCommunication();
+		}
+		catch (FTPIllegalReplyException e) {
+			client.abruptlyCloseCommunication();
+		}
+		catch (FTPException e) {
+			client.abruptlyCloseCommunication();
+		}
+	}
+
+	/**
+	 * Helping method that returns the idle list of a key, creating it if needed. Caller must hold the idle lock
+	 *
+	 * @param	key		The pool key
+	 *
+	 * @return	The idle list
+	 */
+	private LinkedList<FtpSession> getIdle(String key){
+		LinkedList<FtpSession> sessions = this.idle.get(key);
+		if (sessions == null){
+			sessions = new LinkedList<FtpSession>();
+			this.idle.put(key, sessions);
+		}
+		return sessions;
+	}
+
+	/**
+	 * Helping method that returns the permits of a key, creating them if needed
+	 *
+	 * @param	key		The pool key
+	 *
+	 * @return	The semaphore bounding the sessions in use for the key
+	 */
+	private Semaphore getPermits(String key){
+		synchronized (this.permits) {
+			Semaphore semaphore = this.permits.get(key);
+			if (semaphore == null){
+				semaphore = new Semaphore(this.maxActive, true);
+				this.permits.put(key, semaphore);
+			}
+			return semaphore;
+		}
+	}
+
+
+	/**
+	 *  Getters and setters
+	 *
+	 */
+	public int getMaxActive() {
+		return maxActive;
+	}
+
+	/**
+	 * Only affects keys that have not been used yet
+	 */
+	public void setMaxActive(int maxActive) {
+		this.maxActive = maxActive;
+	}
+
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	public void setMaxIdle(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	public long getValidationInterval() {
+		return validationInterval;
+	}
+
+	public void setValidationInterval(long validationInterval) {
+		this.validationInterval = validationInterval;
+	}
+
+	public long getBorrowTimeout() {
+		return borrowTimeout;
+	}
+
+	public void setBorrowTimeout(long borrowTimeout) {
+		this.borrowTimeout = borrowTimeout;
+	}
+}
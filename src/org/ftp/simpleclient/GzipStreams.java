@@ -0,0 +1,304 @@
+package org.ftp.simpleclient;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Gzip streams shaped the way ftp4j wants them: an InputStream that compresses what it reads for
+ * uploads, and an OutputStream that decompresses what is written to it for downloads. Both work
+ * in the transferring thread, no extra thread or temporary file is needed
+ *
+ */
+class GzipStreams {
+
+	/**
+	 * Gzip header flags
+	 */
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	/**
+	 * Gives a stream with the gzip compressed contents of the given one
+	 *
+	 * @param	in		The stream to compress, closed when the returned one is closed
+	 * @param	level	The deflate level, 1 (fastest) to 9 (smallest)
+	 *
+	 * @return	The compressed stream
+	 */
+	static InputStream compress(InputStream in, int level){
+
+		final CrcInputStream checked = new CrcInputStream(in);
+		final Deflater deflater = new Deflater(level, true);
+		byte[] header = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+		InputStream body = new DeflaterInputStream(checked, deflater, 64 * 1024) {
+			public void close() throws IOException {
+				super.close();
+				deflater.end();
+			}
+		};
+		//the trailer is only known once the body has been read
+		InputStream trailer = new InputStream() {
+
+			private byte[] bytes;
+			private int position;
+
+			public int read() throws IOException {
+				if (this.bytes == null){
+					this.bytes = new byte[8];
+					writeInt(this.bytes, 0, checked.crc.getValue());
+					writeInt(this.bytes, 4, checked.count);
+				}
+				return this.position < this.bytes.length ? this.bytes[this.position++] & 0xff : -1;
+			}
+		};
+		return new SequenceInputStream(new SequenceInputStream(new ByteArrayInputStream(header), body), trailer);
+	}
+
+	/**
+	 * Input stream that keeps the CRC32 and the length of what is read through it
+	 */
+	private static class CrcInputStream extends FilterInputStream {
+
+		private final CRC32 crc = new CRC32();
+		private long count = 0;
+
+		CrcInputStream(InputStream in){
+			super(in);
+		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0){
+				this.crc.update(b);
+				this.count++;
+			}
+			return b;
+		}
+
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read > 0){
+				this.crc.update(buffer, offset, read);
+				this.count += read;
+			}
+			return read;
+		}
+
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	/**
+	 * Output stream that gunzips what is written to it into another stream, checking the CRC and
+	 * length in the trailer when it is closed
+	 */
+	static class GunzipOutputStream extends OutputStream {
+
+		private static final int HEADER = 0;
+		private static final int BODY = 1;
+		private static final int TRAILER = 2;
+		private static final int DONE = 3;
+
+		private final OutputStream out;
+		private final Inflater inflater = new Inflater(true);
+		private final CRC32 crc = new CRC32();
+		private final byte[] buffer = new byte[64 * 1024];
+		/**
+		 * Bytes of the header or the trailer received so far
+		 */
+		private byte[] pending = new byte[0];
+		private int state = HEADER;
+		private long count = 0;
+
+		/**
+		 * Constructor, wraps the stream the decompressed data is written to
+		 *
+		 * @param	out		The stream, closed when this one is closed
+		 */
+		GunzipOutputStream(OutputStream out){
+			this.out = out;
+		}
+
+		public void write(int b) throws IOException {
+			write(new byte[]{(byte) b}, 0, 1);
+		}
+
+		public void write(byte[] data, int offset, int length) throws IOException {
+
+			while (length > 0){
+				if (this.state == HEADER || this.state == TRAILER){
+					//the header and the trailer are gathered before being parsed
+					this.pending = Arrays.copyOf(this.pending, this.pending.length + length);
+					System.arraycopy(data, offset, this.pending, this.pending.length - length, length);
+					length = 0;
+					if (this.state == HEADER){
+						int size = headerSize(this.pending);
+						if (size >= 0){
+							byte[] rest = Arrays.copyOfRange(this.pending, size, this.pending.length);
+							this.pending = new byte[0];
+							this.state = BODY;
+							data = rest;
+							offset = 0;
+							length = rest.length;
+						}
+					}
+				}
+				else if (this.state == BODY){
+					int end = offset + length;
+					this.inflater.setInput(data, offset, length);
+					length = 0;
+					inflate();
+					if (this.inflater.finished()){
+						//what the inflater did not consume belongs to the trailer
+						int remaining = this.inflater.getRemaining();
+						this.state = TRAILER;
+						offset = end - remaining;
+						length = remaining;
+					}
+				}
+				else{
+					throw new IOException("Unexpected data after the end of the gzip stream");
+				}
+			}
+		}
+
+		public void flush() throws IOException {
+			this.out.flush();
+		}
+
+		public void close() throws IOException {
+
+			try {
+				if (this.state != TRAILER || this.pending.length < 8){
+					throw new IOException("Gzip stream ended before its trailer");
+				}
+				if (this.pending.length > 8){
+					throw new IOException("Gzip streams with several members are not supported");
+				}
+				if (readInt(this.pending, 0) != this.crc.getValue() || readInt(this.pending, 4) != (this.count & 0xffffffffL)){
+					throw new IOException("Gzip stream is corrupted, CRC or length do not match");
+				}
+				this.state = DONE;
+			}
+			finally {
+				this.inflater.end();
+				this.out.close();
+			}
+		}
+
+		/**
+		 * Helping method that writes out everything the inflater can give with its current input
+		 */
+		private void inflate() throws IOException {
+
+			try {
+				int inflated;
+				while ((inflated = this.inflater.inflate(this.buffer)) > 0){
+					this.out.write(this.buffer, 0, inflated);
+					this.crc.update(this.buffer, 0, inflated);
+					this.count += inflated;
+				}
+				if (this.inflater.needsDictionary()){
+					throw new IOException("Gzip stream needs a dictionary");
+				}
+			}
+			catch (DataFormatException e) {
+				throw new IOException("Gzip stream is corrupted: " + e.getMessage());
+			}
+		}
+
+		/**
+		 * Helping method that tells the size of a gzip header
+		 *
+		 * @param	header		The bytes received so far
+		 *
+		 * @return	The size of the header, -1 if more bytes are needed
+		 */
+		private static int headerSize(byte[] header) throws IOException {
+
+			if (header.length < 10){
+				return -1;
+			}
+			if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || header[2] != Deflater.DEFLATED){
+				throw new IOException("Not a gzip stream");
+			}
+			int flags = header[3];
+			int size = 10;
+			if ((flags & FEXTRA) != 0){
+				if (header.length < size + 2){
+					return -1;
+				}
+				size += 2 + ((header[size] & 0xff) | ((header[size + 1] & 0xff) << 8));
+			}
+			if ((flags & FNAME) != 0){
+				size = skipZeroTerminated(header, size);
+				if (size < 0){
+					return -1;
+				}
+			}
+			if ((flags & FCOMMENT) != 0){
+				size = skipZeroTerminated(header, size);
+				if (size < 0){
+					return -1;
+				}
+			}
+			if ((flags & FHCRC) != 0){
+				size += 2;
+			}
+			return header.length >= size ? size : -1;
+		}
+
+		/**
+		 * Helping method that skips a zero terminated string of the header
+		 *
+		 * @return	The position after the string, -1 if it is not complete yet
+		 */
+		private static int skipZeroTerminated(byte[] header, int position){
+
+			for (int i=position; i<header.length; i++){
+				if (header[i] == 0){
+					return i + 1;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Helping method that writes a little endian 32 bits value
+	 */
+	private static void writeInt(byte[] bytes, int offset, long value){
+
+		for (int i=0; i<4; i++){
+			bytes[offset + i] = (byte) (value >>> (8 * i));
+		}
+	}
+
+	/**
+	 * Helping method that reads a little endian 32 bits value
+	 */
+	private static long readInt(byte[] bytes, int offset){
+
+		long value = 0;
+		for (int i=0; i<4; i++){
+			value |= (bytes[offset + i] & 0xffL) << (8 * i);
+		}
+		return value;
+	}
+}
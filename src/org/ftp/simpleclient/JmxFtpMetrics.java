@@ -0,0 +1,287 @@
+package org.ftp.simpleclient;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * FtpMetrics implementation that aggregates the figures in memory and publishes them as a
+ * standard MBean, under org.ftp.simpleclient:type=FtpMetrics,name=<name> once registered.
+ * The same object can be given to several FtpClient objects to aggregate all of them
+ *
+ */
+public class JmxFtpMetrics implements FtpMetrics, JmxFtpMetricsMBean {
+
+	/**
+	 * Transfer counters
+	 */
+	private final AtomicLong transfers = new AtomicLong();
+	private final AtomicLong failedTransfers = new AtomicLong();
+	private final AtomicLong bytesUploaded = new AtomicLong();
+	private final AtomicLong bytesDownloaded = new AtomicLong();
+	/**
+	 * Time spent in every transfer, in nanoseconds, to compute the overall throughput
+	 */
+	private final AtomicLong transferNanos = new AtomicLong();
+	/**
+	 * Histograms of each phase
+	 */
+	private final LatencyHistogram transferTimes = new LatencyHistogram();
+	private final LatencyHistogram firstByteTimes = new LatencyHistogram();
+	private final LatencyHistogram connectTimes = new LatencyHistogram();
+	private final LatencyHistogram loginTimes = new LatencyHistogram();
+	private final LatencyHistogram handshakeTimes = new LatencyHistogram();
+	/**
+	 * Histograms of the data connections set up and of those that failed, by mode
+	 */
+	private final LatencyHistogram passiveSetupTimes = new LatencyHistogram();
+	private final LatencyHistogram activeSetupTimes = new LatencyHistogram();
+	private final LatencyHistogram passiveFailureTimes = new LatencyHistogram();
+	private final LatencyHistogram activeFailureTimes = new LatencyHistogram();
+	/**
+	 * Histogram of the latency of each command, by command
+	 */
+	private final ConcurrentMap<String, LatencyHistogram> commands = new ConcurrentHashMap<String, LatencyHistogram>();
+	/**
+	 * Name the MBean was registered with, null if it is not registered
+	 */
+	private ObjectName objectName;
+
+	/**
+	 * Registers this object in the platform MBean server
+	 *
+	 * @param	name	The name of the MBean, i.e. the name of the FTP server
+	 *
+	 * @throws	JMException	If the MBean can not be registered
+	 */
+	public synchronized void register(String name) throws JMException {
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName("org.ftp.simpleclient:type=FtpMetrics,name=" + ObjectName.quote(name));
+		server.registerMBean(this, objectName);
+		this.objectName = objectName;
+	}
+
+	/**
+	 * Removes this object from the platform MBean server, if it was registered
+	 *
+	 * @throws	JMException	If the MBean can not be unregistered
+	 */
+	public synchronized void unregister() throws JMException {
+
+		if (this.objectName != null){
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+			this.objectName = null;
+		}
+	}
+
+	public void connected(long nanos) {
+		this.connectTimes.record(nanos);
+	}
+
+	public void loggedIn(long nanos) {
+		this.loginTimes.record(nanos);
+	}
+
+	public void handshakeCompleted(long nanos) {
+		this.handshakeTimes.record(nanos);
+	}
+
+	public void commandCompleted(String command, long nanos) {
+
+		LatencyHistogram histogram = this.commands.get(command);
+		if (histogram == null){
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = this.commands.putIfAbsent(command, created);
+			if (histogram == null){
+				histogram = created;
+			}
+		}
+		histogram.record(nanos);
+	}
+
+	public void dataConnectionSetUp(boolean passive, long nanos, boolean success) {
+
+		if (success){
+			getDataConnectionSetups(passive).record(nanos);
+		}
+		else{
+			getDataConnectionFailures(passive).record(nanos);
+		}
+	}
+
+	public void transferCompleted(String name, boolean upload, long bytes, long nanos, long firstByteNanos, boolean success) {
+
+		this.transfers.incrementAndGet();
+		if (!success){
+			this.failedTransfers.incrementAndGet();
+		}
+		if (upload){
+			this.bytesUploaded.addAndGet(bytes);
+		}
+		else{
+			this.bytesDownloaded.addAndGet(bytes);
+		}
+		this.transferNanos.addAndGet(nanos);
+		this.transferTimes.record(nanos);
+		this.firstByteTimes.record(firstByteNanos);
+	}
+
+	public long getTransfers() {
+		return transfers.get();
+	}
+
+	public long getFailedTransfers() {
+		return failedTransfers.get();
+	}
+
+	public long getBytesUploaded() {
+		return bytesUploaded.get();
+	}
+
+	public long getBytesDownloaded() {
+		return bytesDownloaded.get();
+	}
+
+	public double getBytesPerSecond() {
+
+		long nanos = this.transferNanos.get();
+		if (nanos <= 0){
+			return 0;
+		}
+		return (getBytesUploaded() + getBytesDownloaded()) * 1000000000.0 / nanos;
+	}
+
+	public double getMeanTimeToFirstByte() {
+		return firstByteTimes.getMeanMillis();
+	}
+
+	public double getMeanTransferTime() {
+		return transferTimes.getMeanMillis();
+	}
+
+	public double getMeanConnectTime() {
+		return connectTimes.getMeanMillis();
+	}
+
+	public double getMeanLoginTime() {
+		return loginTimes.getMeanMillis();
+	}
+
+	public double getMeanHandshakeTime() {
+		return handshakeTimes.getMeanMillis();
+	}
+
+	public double getMeanPassiveSetupTime() {
+		return passiveSetupTimes.getMeanMillis();
+	}
+
+	public double getMeanActiveSetupTime() {
+		return activeSetupTimes.getMeanMillis();
+	}
+
+	public long getFailedPassiveSetups() {
+		return passiveFailureTimes.getCount();
+	}
+
+	public long getFailedActiveSetups() {
+		return activeFailureTimes.getCount();
+	}
+
+	public String[] getDataConnectionLatencies() {
+
+		return new String[] {
+			"passive: " + this.passiveSetupTimes,
+			"active: " + this.activeSetupTimes,
+			"passive failed: " + this.passiveFailureTimes,
+			"active failed: " + this.activeFailureTimes
+		};
+	}
+
+	public String[] getCommands() {
+		return new TreeMap<String, LatencyHistogram>(this.commands).keySet().toArray(new String[0]);
+	}
+
+	public String[] getCommandLatencies() {
+
+		List<String> lines = new ArrayList<String>();
+		for (Map.Entry<String, LatencyHistogram> command : new TreeMap<String, LatencyHistogram>(this.commands).entrySet()){
+			lines.add(command.getKey() + ": " + command.getValue());
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	public long[] getHistogramBounds() {
+		return LatencyHistogram.getBucketBounds();
+	}
+
+	public long[] getCommandHistogram(String command) {
+
+		LatencyHistogram histogram = this.commands.get(command);
+		return histogram == null ? null : histogram.getBucketCounts();
+	}
+
+	public double getMeanCommandLatency(String command) {
+
+		LatencyHistogram histogram = this.commands.get(command);
+		return histogram == null ? 0 : histogram.getMeanMillis();
+	}
+
+	/**
+	 * @param	command		A command, i.e. RETR
+	 *
+	 * @return	The latency histogram of the command, null if it has not been timed
+	 */
+	public LatencyHistogram getCommandLatency(String command) {
+		return commands.get(command);
+	}
+
+	/**
+	 * @param	passive		<code>true</code> for passive, <code>false</code> for active
+	 *
+	 * @return	The setup times of the data connections of the mode that were set up
+	 */
+	public LatencyHistogram getDataConnectionSetups(boolean passive) {
+		return passive ? passiveSetupTimes : activeSetupTimes;
+	}
+
+	/**
+	 * @param	passive		<code>true</code> for passive, <code>false</code> for active
+	 *
+	 * @return	The time lost in the data connections of the mode that failed
+	 */
+	public LatencyHistogram getDataConnectionFailures(boolean passive) {
+		return passive ? passiveFailureTimes : activeFailureTimes;
+	}
+
+	public void reset() {
+
+		this.transfers.set(0);
+		this.failedTransfers.set(0);
+		this.bytesUploaded.set(0);
+		this.bytesDownloaded.set(0);
+		this.transferNanos.set(0);
+		this.transferTimes.reset();
+		this.firstByteTimes.reset();
+		this.connectTimes.reset();
+		this.loginTimes.reset();
+		this.handshakeTimes.reset();
+		this.passiveSetupTimes.reset();
+		this.activeSetupTimes.reset();
+		this.passiveFailureTimes.reset();
+		this.activeFailureTimes.reset();
+		this.commands.clear();
+	}
+}
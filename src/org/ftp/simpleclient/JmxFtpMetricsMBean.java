@@ -0,0 +1,88 @@
+package org.ftp.simpleclient;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Management interface of JmxFtpMetrics, the attributes and operations seen from a JMX console.
+ * Durations are in milliseconds
+ *
+ */
+public interface JmxFtpMetricsMBean {
+
+	long getTransfers();
+
+	long getFailedTransfers();
+
+	long getBytesUploaded();
+
+	long getBytesDownloaded();
+
+	/**
+	 * @return	Bytes moved per second of transfer time, over every transfer
+	 */
+	double getBytesPerSecond();
+
+	double getMeanTimeToFirstByte();
+
+	double getMeanTransferTime();
+
+	double getMeanConnectTime();
+
+	double getMeanLoginTime();
+
+	double getMeanHandshakeTime();
+
+	/**
+	 * @return	The mean time from PASV until a passive data connection could carry data
+	 */
+	double getMeanPassiveSetupTime();
+
+	/**
+	 * @return	The mean time from PORT until an active data connection could carry data
+	 */
+	double getMeanActiveSetupTime();
+
+	long getFailedPassiveSetups();
+
+	long getFailedActiveSetups();
+
+	/**
+	 * @return	One line per data connection mode, set up and failed, with its count, mean, p99 and max latency
+	 */
+	String[] getDataConnectionLatencies();
+
+	/**
+	 * @return	The commands that have been timed
+	 */
+	String[] getCommands();
+
+	/**
+	 * @return	One line per command with its count, mean, p99 and max latency
+	 */
+	String[] getCommandLatencies();
+
+	/**
+	 * @return	The upper bound of each histogram bucket, the last bucket has none
+	 */
+	long[] getHistogramBounds();
+
+	/**
+	 * @param	command		A command, i.e. RETR
+	 *
+	 * @return	The number of replies in each latency bucket, null if the command has not been timed
+	 */
+	long[] getCommandHistogram(String command);
+
+	/**
+	 * @param	command		A command, i.e. RETR
+	 *
+	 * @return	The mean latency of the command, 0 if it has not been timed
+	 */
+	double getMeanCommandLatency(String command);
+
+	/**
+	 * Forgets everything measured so far
+	 */
+	void reset();
+}
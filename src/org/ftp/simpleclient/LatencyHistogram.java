@@ -0,0 +1,151 @@
+package org.ftp.simpleclient;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Lock free histogram of durations, with fixed buckets going from 1 ms to 10 s and one more
+ * bucket for anything slower. Besides the buckets it keeps the count, total and maximum
+ *
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Upper bound of each bucket in milliseconds, the last bucket has no bound
+	 */
+	private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+	/**
+	 * Number of durations in each bucket
+	 */
+	private final AtomicLongArray buckets;
+	/**
+	 * Number of durations recorded
+	 */
+	private final AtomicLong count;
+	/**
+	 * Sum of the durations recorded, in nanoseconds
+	 */
+	private final AtomicLong total;
+	/**
+	 * Longest duration recorded, in nanoseconds
+	 */
+	private final AtomicLong max;
+
+	/**
+	 * Constructor, creates an empty histogram
+	 *
+	 */
+	public LatencyHistogram(){
+
+		this.buckets = new AtomicLongArray(BOUNDS.length + 1);
+		this.count = new AtomicLong();
+		this.total = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * Records a duration
+	 *
+	 * @param	nanos		The duration in nanoseconds
+	 */
+	public void record(long nanos){
+
+		long millis = nanos / 1000000;
+		int bucket = 0;
+		while (bucket < BOUNDS.length && millis >= BOUNDS[bucket]){
+			bucket++;
+		}
+		this.buckets.incrementAndGet(bucket);
+		this.count.incrementAndGet();
+		this.total.addAndGet(nanos);
+		long current;
+		while (nanos > (current = this.max.get()) && !this.max.compareAndSet(current, nanos)){
+			//somebody else changed it, try again
+		}
+	}
+
+	/**
+	 * @return	The mean duration in milliseconds, 0 if nothing was recorded
+	 */
+	public double getMeanMillis(){
+
+		long recorded = this.count.get();
+		if (recorded == 0){
+			return 0;
+		}
+		return this.total.get() / 1000000.0 / recorded;
+	}
+
+	/**
+	 * Approximates a percentile with the upper bound of the bucket it falls in
+	 *
+	 * @param	percentile		The percentile, between 0 and 100
+	 *
+	 * @return	The upper bound in milliseconds, the maximum recorded if it falls in the last bucket
+	 */
+	public double getPercentileMillis(double percentile){
+
+		long[] counts = getBucketCounts();
+		long recorded = 0;
+		for (int i=0; i<counts.length; i++){
+			recorded += counts[i];
+		}
+		long wanted = (long) Math.ceil(recorded * percentile / 100.0);
+		long seen = 0;
+		for (int i=0; i<BOUNDS.length; i++){
+			seen += counts[i];
+			if (seen >= wanted && seen > 0){
+				return BOUNDS[i];
+			}
+		}
+		return getMaxMillis();
+	}
+
+	/**
+	 * @return	A copy of the number of durations in each bucket
+	 */
+	public long[] getBucketCounts(){
+
+		long[] counts = new long[this.buckets.length()];
+		for (int i=0; i<counts.length; i++){
+			counts[i] = this.buckets.get(i);
+		}
+		return counts;
+	}
+
+	/**
+	 * @return	A copy of the upper bound of each bucket in milliseconds, the last bucket has none
+	 */
+	public static long[] getBucketBounds(){
+		return BOUNDS.clone();
+	}
+
+	/**
+	 * Forgets everything recorded
+	 */
+	public void reset(){
+
+		for (int i=0; i<this.buckets.length(); i++){
+			this.buckets.set(i, 0);
+		}
+		this.count.set(0);
+		this.total.set(0);
+		this.max.set(0);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public double getMaxMillis() {
+		return max.get() / 1000000.0;
+	}
+
+	public String toString(){
+		return getCount() + " samples, mean " + getMeanMillis() + " ms, p99 " + getPercentileMillis(99) + " ms, max " + getMaxMillis() + " ms";
+	}
+}
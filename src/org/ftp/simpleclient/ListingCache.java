@@ -0,0 +1,136 @@
+package org.ftp.simpleclient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import it.sauronsoftware.ftp4j.FTPFile;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * In-memory cache of remote directory listings, keyed by server and path. Listings expire after
+ * a time to live and the least recently used ones are dropped when the cache is full. A cache can
+ * be shared by several FtpClient objects
+ *
+ */
+public class ListingCache {
+
+	/**
+	 * A cached listing and the time it was taken
+	 */
+	private static class Listing {
+
+		private final FTPFile[] entries;
+		private final long created;
+
+		Listing(FTPFile[] entries){
+			this.entries = entries;
+			this.created = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * The listings, least recently used first
+	 */
+	private final LinkedHashMap<String, Listing> listings;
+	/**
+	 * Maximum number of listings kept
+	 */
+	private final int maxEntries;
+	/**
+	 * Time in milliseconds a listing is valid
+	 */
+	private long ttl;
+
+	/**
+	 * Constructor initializes the cache with given parameters
+	 *
+	 * @param	maxEntries	Maximum number of directories kept
+	 * @param	ttl			Time in milliseconds a listing is valid
+	 *
+	 */
+	public ListingCache(final int maxEntries, long ttl){
+
+		this.maxEntries = maxEntries;
+		this.ttl = ttl;
+		this.listings = new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+				return size() > ListingCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Gives the listing of a directory, if it is cached and has not expired
+	 *
+	 * @param	key		The key of the directory, server and path
+	 *
+	 * @return	The entries of the directory, null if they have to be listed
+	 */
+	public synchronized FTPFile[] get(String key){
+
+		Listing listing = this.listings.get(key);
+		if (listing == null){
+			return null;
+		}
+		if (System.currentTimeMillis() - listing.created > this.ttl){
+			this.listings.remove(key);
+			return null;
+		}
+		return listing.entries;
+	}
+
+	/**
+	 * Caches the listing of a directory
+	 *
+	 * @param	key			The key of the directory, server and path
+	 * @param	entries		The entries of the directory
+	 */
+	public synchronized void put(String key, FTPFile[] entries){
+		this.listings.put(key, new Listing(entries));
+	}
+
+	/**
+	 * Drops the listing of a directory, i.e. after it was written to
+	 *
+	 * @param	key		The key of the directory, server and path
+	 */
+	public synchronized void invalidate(String key){
+		this.listings.remove(key);
+	}
+
+	/**
+	 * Drops every listing
+	 */
+	public synchronized void clear(){
+		this.listings.clear();
+	}
+
+	/**
+	 * @return	The number of listings cached
+	 */
+	public synchronized int size(){
+		return this.listings.size();
+	}
+
+
+	/**
+	 *  Getters and setters
+	 *
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public synchronized long getTtl() {
+		return ttl;
+	}
+
+	public synchronized void setTtl(long ttl) {
+		this.ttl = ttl;
+	}
+}
@@ -0,0 +1,22 @@
+package org.ftp.simpleclient;
+
+import it.sauronsoftware.ftp4j.FTPFile;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Receives the entries of a remote directory one by one, see FtpClient.visitDirectory
+ *
+ */
+public interface ListingVisitor {
+
+	/**
+	 * Called for each entry of the directory, in the order given by the server
+	 *
+	 * @param	entry	The entry, a file, a directory or a link
+	 *
+	 * @return	<code>false</code> to stop the listing, the rest of the entries are not visited
+	 */
+	boolean visit(FTPFile entry);
+}
@@ -0,0 +1,144 @@
+package org.ftp.simpleclient;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Token bucket limiting the bytes per second going through it. Every transfer is throttled by
+ * up to three of them: its own (FtpClient.setTransferRateLimit), the one of its host and the
+ * global one, shared by every FtpClient in the JVM. Transfers waiting for the same bucket are
+ * served in turns, a small chunk each, so they share the bandwidth fairly.
+ *
+ * The rate can be changed at any time and applies at once to the transfers already running.
+ * A rate of 0 means unlimited, which is how the host and global buckets start
+ *
+ */
+public class RateLimiter {
+
+	/**
+	 * The bucket shared by every transfer of the JVM
+	 */
+	private static final RateLimiter GLOBAL = new RateLimiter(0);
+	/**
+	 * The bucket of each host
+	 */
+	private static final ConcurrentMap<String, RateLimiter> HOSTS = new ConcurrentHashMap<String, RateLimiter>();
+
+	/**
+	 * Bytes per second allowed, 0 for unlimited
+	 */
+	private volatile long rate;
+	/**
+	 * Bytes that can go through right now, negative while somebody is waiting for them
+	 */
+	private double tokens;
+	/**
+	 * Last time tokens were added, from System.nanoTime
+	 */
+	private long last;
+	/**
+	 * Fair lock, waiting transfers get their tokens in the order they asked for them
+	 */
+	private final ReentrantLock lock = new ReentrantLock(true);
+
+	/**
+	 * Constructor initializes the bucket full
+	 *
+	 * @param	rate	Bytes per second allowed, 0 for unlimited
+	 *
+	 */
+	public RateLimiter(long rate){
+
+		this.rate = rate;
+		this.tokens = rate;
+		this.last = System.nanoTime();
+	}
+
+	/**
+	 * @return	The bucket shared by every transfer of the JVM
+	 */
+	public static RateLimiter global(){
+		return GLOBAL;
+	}
+
+	/**
+	 * Gives the bucket shared by every transfer to a host, created unlimited the first time
+	 *
+	 * @param	host	The FTP host address
+	 *
+	 * @return	The bucket of the host
+	 */
+	public static RateLimiter forHost(String host){
+
+		RateLimiter limiter = HOSTS.get(host);
+		if (limiter == null){
+			RateLimiter created = new RateLimiter(0);
+			limiter = HOSTS.putIfAbsent(host, created);
+			if (limiter == null){
+				limiter = created;
+			}
+		}
+		return limiter;
+	}
+
+	/**
+	 * Takes tokens for the given number of bytes, waiting until they are available
+	 *
+	 * @param	bytes	The number of bytes about to go through
+	 *
+	 * @throws	InterruptedIOException	If the thread is interrupted while waiting
+	 */
+	public void acquire(long bytes) throws InterruptedIOException {
+
+		long rate = this.rate;
+		if (rate <= 0 || bytes <= 0){
+			return;
+		}
+		try {
+			this.lock.lockInterruptibly();
+			try {
+				long now = System.nanoTime();
+				//refill, a burst never goes over one second worth of bytes
+				this.tokens = Math.min(rate, this.tokens + (now - this.last) * rate / 1000000000.0);
+				this.last = now;
+				this.tokens -= bytes;
+				if (this.tokens < 0){
+					//waiting with the lock held makes the others queue behind us
+					TimeUnit.NANOSECONDS.sleep((long) (-this.tokens * 1000000000.0 / rate));
+				}
+			}
+			finally {
+				this.lock.unlock();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+		}
+	}
+
+	/**
+	 * @return	<code>true</code> if the rate is limited
+	 */
+	public boolean isLimited(){
+		return this.rate > 0;
+	}
+
+	/**
+	 *  Getters and setters
+	 *
+	 */
+	public long getRate() {
+		return rate;
+	}
+
+	public void setRate(long rate) {
+		this.rate = rate;
+	}
+}
@@ -0,0 +1,352 @@
+package org.ftp.simpleclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import it.sauronsoftware.ftp4j.FTPFile;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * On-disk manifest of remote directory listings. For each directory it keeps the modification date
+ * of the directory itself and the name, type, size and date of its entries, so a later run can skip
+ * the LIST of a directory whose date did not change.
+ *
+ * The date of a directory only changes when entries are added, removed or renamed, and only with
+ * the precision of MDTM: a file rewritten in place, or added within the same second, is missed and
+ * the manifest gives its old size and date. Listings are therefore only reused once
+ * setTrustDirectoryDates is turned on, for servers and workloads where that can not happen. Until
+ * then nothing is recorded, as a listing without the date of its directory can never be reused.
+ * Directories are kept by their absolute path, so a relative path given in a later run finds them.
+ *
+ * The file is an append-only binary journal: every change is a record added at the end, and the
+ * last record for a directory wins when the file is loaded. It is rewritten from memory with
+ * compact when it grows too much.
+ *
+ */
+public class RemoteManifest {
+
+	/**
+	 * A logger object
+	 */
+	private static final Logger logger = Logger.getLogger(RemoteManifest.class);
+
+	/**
+	 * Record types of the journal
+	 */
+	private static final byte RECORD_DIR = 1;
+	private static final byte RECORD_REMOVE = 2;
+
+	/**
+	 * The journal file
+	 */
+	private final File file;
+	/**
+	 * Directories known, by key
+	 */
+	private final Map<String, Directory> directories;
+	/**
+	 * Stream appending records to the journal
+	 */
+	private DataOutputStream out;
+	/**
+	 * Number of records in the journal, used to decide when to compact it
+	 */
+	private int records;
+	/**
+	 * If true the listing of a directory whose date did not change is reused
+	 */
+	private volatile boolean trustDirectoryDates;
+
+	/**
+	 * State of a remote directory the last time it was listed
+	 */
+	private static class Directory {
+
+		/**
+		 * Modification date of the directory itself, -1 if the server did not tell
+		 */
+		private final long modified;
+		/**
+		 * The entries of the directory, by name
+		 */
+		private final Map<String, Entry> entries;
+
+		Directory(long modified){
+			this.modified = modified;
+			this.entries = new HashMap<String, Entry>();
+		}
+	}
+
+	/**
+	 * An entry of a remote directory
+	 */
+	private static class Entry {
+
+		private final String name;
+		private final int type;
+		private final long size;
+		private final long modified;
+
+		Entry(String name, int type, long size, long modified){
+			this.name = name;
+			this.type = type;
+			this.size = size;
+			this.modified = modified;
+		}
+	}
+
+	/**
+	 * Constructor, loads the manifest stored in the given file, if any
+	 *
+	 * @param	file	The journal file, created if it does not exist
+	 *
+	 * @throws	IOException	If the file can not be read or opened for writing
+	 */
+	public RemoteManifest(File file) throws IOException {
+
+		this.file = file;
+		this.directories = new HashMap<String, Directory>();
+		this.records = 0;
+		boolean damaged = !load();
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		//do not append after a broken record
+		if (damaged){
+			compact();
+		}
+		logger.info("Loaded manifest " + file + " with " + this.directories.size() + " directories");
+	}
+
+	/**
+	 * Gives the entries recorded for a directory, only if the directory has not been modified since
+	 *
+	 * @param	key			The key of the directory, server and absolute path
+	 * @param	modified	The current modification date of the directory, -1 if unknown
+	 *
+	 * @return	The recorded entries, null if the directory must be listed again
+	 */
+	public synchronized FTPFile[] getEntries(String key, long modified){
+
+		Directory directory = this.directories.get(key);
+		if (!this.trustDirectoryDates || directory == null || modified < 0 || directory.modified != modified){
+			return null;
+		}
+		FTPFile[] files = new FTPFile[directory.entries.size()];
+		int i = 0;
+		for (Entry entry : directory.entries.values()){
+			FTPFile ftpFile = new FTPFile();
+			ftpFile.setName(entry.name);
+			ftpFile.setType(entry.type);
+			ftpFile.setSize(entry.size);
+			if (entry.modified >= 0){
+				ftpFile.setModifiedDate(new Date(entry.modified));
+			}
+			files[i++] = ftpFile;
+		}
+		return files;
+	}
+
+	/**
+	 * Records a fresh listing of a directory. Without the date of the directory it could never be
+	 * reused, the listing is not recorded then and only the previous one is dropped
+	 *
+	 * @param	key			The key of the directory, server and absolute path
+	 * @param	modified	The modification date of the directory, -1 if unknown
+	 * @param	files		The entries listed
+	 */
+	public synchronized void record(String key, long modified, FTPFile[] files){
+
+		if (modified < 0){
+			remove(key);
+			return;
+		}
+
+		Directory directory = new Directory(modified);
+		for (int i=0; i<files.length; i++){
+			Date date = files[i].getModifiedDate();
+			Entry entry = new Entry(files[i].getName(), files[i].getType(), files[i].getSize(), date == null ? -1 : date.getTime());
+			directory.entries.put(entry.name, entry);
+		}
+		this.directories.put(key, directory);
+
+		try {
+			writeDirectory(this.out, key, directory);
+			this.out.flush();
+			this.records++;
+			compactIfNeeded();
+		}
+		catch (IOException e) {
+			logger.error("Could not write to manifest " + this.file + ", the listing of " + key + " will not survive a restart");
+		}
+	}
+
+	/**
+	 * Forgets a directory, i.e. after it was deleted or written to
+	 *
+	 * @param	key		The key of the directory, server and absolute path
+	 */
+	public synchronized void remove(String key){
+
+		if (this.directories.remove(key) == null){
+			return;
+		}
+		try {
+			this.out.writeByte(RECORD_REMOVE);
+			this.out.writeUTF(key);
+			this.out.flush();
+			this.records++;
+		}
+		catch (IOException e) {
+			logger.error("Could not write to manifest " + this.file + ", " + key + " may be reported again after a restart");
+		}
+	}
+
+	/**
+	 * @return	<code>true</code> if listings are reused while the date of their directory does not change
+	 */
+	public boolean isTrustDirectoryDates(){
+		return this.trustDirectoryDates;
+	}
+
+	/**
+	 * Reuses, or not, the listing of a directory whose date did not change. Off by default, see
+	 * the class comment for what can be missed
+	 *
+	 * @param	trustDirectoryDates		If true listings are reused while the date of their directory does not change
+	 */
+	public void setTrustDirectoryDates(boolean trustDirectoryDates){
+		this.trustDirectoryDates = trustDirectoryDates;
+	}
+
+	/**
+	 * Rewrites the journal with only the current state of every directory
+	 *
+	 * @throws	IOException	If the journal can not be rewritten
+	 */
+	public synchronized void compact() throws IOException {
+
+		File tmp = new File(this.file.getPath() + ".tmp");
+		DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			for (Map.Entry<String, Directory> directory : this.directories.entrySet()){
+				writeDirectory(compacted, directory.getKey(), directory.getValue());
+			}
+		}
+		finally {
+			compacted.close();
+		}
+
+		this.out.close();
+		try {
+			//the old journal stays whole until the new one takes its place
+			Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			//still writable if the journal could not be replaced
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, true)));
+		}
+		this.records = this.directories.size();
+		logger.info("Manifest " + this.file + " compacted to " + this.records + " directories");
+	}
+
+	/**
+	 * Closes the journal
+	 *
+	 * @throws	IOException	If the journal can not be closed
+	 */
+	public synchronized void close() throws IOException {
+		this.out.close();
+	}
+
+	/**
+	 * Helping method that compacts the journal once most of its records are outdated
+	 */
+	private void compactIfNeeded() throws IOException {
+		if (this.records > 1000 && this.records > 4 * this.directories.size()){
+			compact();
+		}
+	}
+
+	/**
+	 * Helping method that writes the record of a directory
+	 *
+	 * @param	stream		Where the record is written
+	 * @param	key			The key of the directory
+	 * @param	directory	The state of the directory
+	 */
+	private static void writeDirectory(DataOutputStream stream, String key, Directory directory) throws IOException {
+
+		stream.writeByte(RECORD_DIR);
+		stream.writeUTF(key);
+		stream.writeLong(directory.modified);
+		stream.writeInt(directory.entries.size());
+		for (Entry entry : directory.entries.values()){
+			stream.writeUTF(entry.name);
+			stream.writeByte(entry.type);
+			stream.writeLong(entry.size);
+			stream.writeLong(entry.modified);
+		}
+	}
+
+	/**
+	 * Helping method that replays the journal. A truncated last record, left by a crash, is ignored
+	 *
+	 * @return	<code>false</code> if the journal ended with a broken record
+	 */
+	private boolean load() throws IOException {
+
+		if (!this.file.exists()){
+			return true;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+		try {
+			int type;
+			while ((type = in.read()) != -1){
+				String key = in.readUTF();
+				if (type == RECORD_DIR){
+					Directory directory = new Directory(in.readLong());
+					int count = in.readInt();
+					for (int i=0; i<count; i++){
+						String name = in.readUTF();
+						int entryType = in.readByte();
+						long size = in.readLong();
+						long modified = in.readLong();
+						directory.entries.put(name, new Entry(name, entryType, size, modified));
+					}
+					this.directories.put(key, directory);
+				}
+				else if (type == RECORD_REMOVE){
+					this.directories.remove(key);
+				}
+				else{
+					logger.error("Manifest " + this.file + " is corrupted, ignoring the rest of it");
+					return false;
+				}
+				this.records++;
+			}
+			return true;
+		}
+		catch (EOFException e) {
+			logger.error("Manifest " + this.file + " ends with a truncated record, ignoring it");
+			return false;
+		}
+		finally {
+			in.close();
+		}
+	}
+}
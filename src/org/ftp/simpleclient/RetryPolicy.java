@@ -0,0 +1,126 @@
+package org.ftp.simpleclient;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Tells how many times a failed transfer is attempted again and how long to wait between attempts.
+ * The wait grows exponentially from initialDelay, multiplied by multiplier on each attempt, up to maxDelay
+ *
+ */
+public class RetryPolicy {
+
+	/**
+	 * Maximum number of attempts, the first one included
+	 */
+	private final int maxAttempts;
+	/**
+	 * Wait before the second attempt, in milliseconds
+	 */
+	private final long initialDelay;
+	/**
+	 * Factor applied to the wait after each attempt
+	 */
+	private final double multiplier;
+	/**
+	 * Longest wait between two attempts, in milliseconds
+	 */
+	private final long maxDelay;
+
+	/**
+	 * Constructor, a policy that never retries
+	 *
+	 */
+	public RetryPolicy(){
+
+		this(1, 0, 1, 0);
+	}
+
+	/**
+	 * Constructor initializes the policy with given parameters
+	 *
+	 * @param	maxAttempts		Maximum number of attempts, the first one included
+	 * @param	initialDelay	Wait before the second attempt, in milliseconds
+	 * @param	multiplier		Factor applied to the wait after each attempt
+	 * @param	maxDelay		Longest wait between two attempts, in milliseconds
+	 *
+	 */
+	public RetryPolicy(int maxAttempts, long initialDelay, double multiplier, long maxDelay){
+
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.initialDelay = initialDelay;
+		this.multiplier = multiplier;
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * Tells if another attempt can be made after the given one failed
+	 *
+	 * @param	attempt		The number of the attempt that failed, starting at 1
+	 *
+	 * @return	<code>true</code> if the transfer can be attempted again
+	 */
+	public boolean shouldRetry(int attempt){
+		return attempt < this.maxAttempts;
+	}
+
+	/**
+	 * The time to wait after the given attempt failed
+	 *
+	 * @param	attempt		The number of the attempt that failed, starting at 1
+	 *
+	 * @return	The wait in milliseconds
+	 */
+	public long getDelay(int attempt){
+		double delay = this.initialDelay * Math.pow(this.multiplier, attempt - 1);
+		return (long) Math.min(delay, this.maxDelay);
+	}
+
+	/**
+	 * Waits before the next attempt
+	 *
+	 * @param	attempt		The number of the attempt that failed, starting at 1
+	 *
+	 * @return	<code>false</code> if the thread was interrupted before or while waiting, no more attempts should be made
+	 */
+	public boolean pause(int attempt){
+
+		//an interrupted thread does not try again
+		if (Thread.currentThread().isInterrupted()){
+			return false;
+		}
+		long delay = getDelay(attempt);
+		if (delay <= 0){
+			return true;
+		}
+		try {
+			Thread.sleep(delay);
+			return true;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+
+	/**
+	 *  Getters
+	 *
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	public double getMultiplier() {
+		return multiplier;
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+}
@@ -0,0 +1,84 @@
+package org.ftp.simpleclient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * OutputStream that writes a byte range of a file through positional FileChannel writes, so several
+ * segments of the same file can be written at once from different threads. Once the range is full
+ * any further write fails with a SegmentCompleteException, which is used to stop the download
+ *
+ */
+class SegmentOutputStream extends OutputStream {
+
+	/**
+	 * Thrown when the server sends more bytes than the segment can hold
+	 */
+	static class SegmentCompleteException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		SegmentCompleteException(){
+			super("Segment complete");
+		}
+	}
+
+	/**
+	 * The channel of the local file
+	 */
+	private final FileChannel channel;
+	/**
+	 * Position where the next byte will be written
+	 */
+	private long position;
+	/**
+	 * Bytes left to complete the segment
+	 */
+	private long remaining;
+
+	/**
+	 * Constructor
+	 *
+	 * @param	channel		The channel of the local file, already sized
+	 * @param	start		Offset of the first byte of the segment
+	 * @param	length		Length of the segment
+	 *
+	 */
+	SegmentOutputStream(FileChannel channel, long start, long length){
+
+		this.channel = channel;
+		this.position = start;
+		this.remaining = length;
+	}
+
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+
+		int count = (int) Math.min(len, this.remaining);
+		ByteBuffer buffer = ByteBuffer.wrap(b, off, count);
+		while (buffer.hasRemaining()){
+			this.position += this.channel.write(buffer, this.position);
+		}
+		this.remaining -= count;
+		if (count < len){
+			throw new SegmentCompleteException();
+		}
+	}
+
+	/**
+	 * Tells if the whole segment has been written
+	 *
+	 * @return	<code>true</code> if there are no bytes left
+	 */
+	boolean isComplete(){
+		return this.remaining == 0;
+	}
+}
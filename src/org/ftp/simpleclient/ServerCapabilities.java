@@ -0,0 +1,341 @@
+package org.ftp.simpleclient;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * What an FTP server supports, shared by every session and every FtpClient of the JVM talking to
+ * the same host:port. It is filled from the FEAT reply, read as it goes by when ftp4j logs in, and
+ * from the replies to the commands actually used: a command the server rejects as unknown (500,
+ * 502, 504) is not tried again, even if FEAT advertised it, and one that worked is used even if
+ * FEAT did not mention it. Operations ask supports() before taking a path that needs a command.
+ *
+ * With setStore the capabilities are also kept in a file, so a new JVM does not have to probe the
+ * servers again
+ *
+ */
+public class ServerCapabilities {
+
+	/**
+	 * A logger object
+	 */
+	private static final Logger logger = Logger.getLogger(ServerCapabilities.class);
+
+	/**
+	 * The capabilities of each server, by host:port
+	 */
+	private static final ConcurrentMap<String, ServerCapabilities> SERVERS = new ConcurrentHashMap<String, ServerCapabilities>();
+	/**
+	 * Commands whose support is told by FEAT (RFC 2389, 3659 and the HASH draft), and the feature naming them
+	 */
+	private static final Map<String, String> FEATURES = new HashMap<String, String>();
+	static {
+		FEATURES.put("MDTM", "MDTM");
+		FEATURES.put("SIZE", "SIZE");
+		FEATURES.put("MLSD", "MLST");
+		FEATURES.put("MLST", "MLST");
+		FEATURES.put("REST", "REST");
+		FEATURES.put("MODE", "MODE");
+		FEATURES.put("HASH", "HASH");
+		FEATURES.put("UTF8", "UTF8");
+	}
+	/**
+	 * File the capabilities are kept in, null if they are only kept in memory
+	 */
+	private static File store;
+
+	/**
+	 * host:port of the server
+	 */
+	private final String server;
+	/**
+	 * The features of the last FEAT reply, null if the server has not answered FEAT
+	 */
+	private volatile Set<String> features;
+	/**
+	 * What happened when commands were used, by command
+	 */
+	private final ConcurrentMap<String, Boolean> probed = new ConcurrentHashMap<String, Boolean>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param	server		host:port of the server
+	 */
+	private ServerCapabilities(String server){
+		this.server = server;
+	}
+
+	/**
+	 * Gives the capabilities of a server, empty the first time
+	 *
+	 * @param	host	The FTP host address
+	 * @param	port	The FTP port
+	 *
+	 * @return	The capabilities of the server
+	 */
+	public static ServerCapabilities forServer(String host, int port){
+		return forKey(host.toLowerCase() + ":" + port);
+	}
+
+	/**
+	 * Helping method that gives the capabilities stored under a key, creating them the first time
+	 */
+	private static ServerCapabilities forKey(String key){
+
+		ServerCapabilities capabilities = SERVERS.get(key);
+		if (capabilities == null){
+			ServerCapabilities created = new ServerCapabilities(key);
+			capabilities = SERVERS.putIfAbsent(key, created);
+			if (capabilities == null){
+				capabilities = created;
+			}
+		}
+		return capabilities;
+	}
+
+	/**
+	 * Tells if the server supports a command
+	 *
+	 * @param	command		The command, with the argument that matters if any ("HASH SHA-256", "REST STREAM", "MODE Z")
+	 *
+	 * @return	TRUE or FALSE if it is known, from using it or from FEAT, null if it has to be tried
+	 */
+	public Boolean supports(String command){
+
+		command = command.toUpperCase();
+		Boolean result = this.probed.get(command);
+		return result != null ? result : advertised(command);
+	}
+
+	/**
+	 * Helping method that tells if the last FEAT reply advertised a command, null if FEAT does not tell
+	 */
+	private Boolean advertised(String command){
+
+		Set<String> current = this.features;
+		int space = command.indexOf(' ');
+		String feature = FEATURES.get(space < 0 ? command : command.substring(0, space));
+		if (current == null || feature == null){
+			return null;
+		}
+		String argument = space < 0 ? null : command.substring(space + 1);
+		for (String line : current){
+			if (line.equals(feature) || line.startsWith(feature + " ")){
+				//HASH lists its algorithms, "HASH SHA-256*;MD5", REST and MODE their modes
+				if (argument == null || line.replace('*', ' ').matches(".*[ ;]" + Pattern.quote(argument) + "([ ;].*)?")){
+					return Boolean.TRUE;
+				}
+			}
+		}
+		return Boolean.FALSE;
+	}
+
+	/**
+	 * Records the reply of the server to a command
+	 *
+	 * @param	command		The command, as given to supports
+	 * @param	code		The reply code
+	 */
+	public void replied(String command, int code){
+
+		if (code >= 200 && code < 400){
+			worked(command);
+		}
+		else if (code == 500 || code == 502 || code == 504){
+			//unknown or not implemented, whatever FEAT said
+			failed(command);
+		}
+	}
+
+	/**
+	 * Records that a command works with the server
+	 *
+	 * @param	command		The command, as given to supports
+	 */
+	public void worked(String command){
+		record(command, Boolean.TRUE);
+	}
+
+	/**
+	 * Records that a command does not work with the server, for failures not told by a reply code
+	 *
+	 * @param	command		The command, as given to supports
+	 */
+	public void failed(String command){
+		record(command, Boolean.FALSE);
+	}
+
+	/**
+	 * Helping method that records what happened with a command, and stores it if it is news
+	 */
+	private void record(String command, Boolean result){
+
+		command = command.toUpperCase();
+		Boolean previous = this.probed.put(command, result);
+		if (!result.equals(previous)){
+			if (!result.booleanValue() && Boolean.TRUE.equals(advertised(command))){
+				logger.warn("Server " + this.server + " advertises " + command + " but does not support it");
+			}
+			save();
+		}
+	}
+
+	/**
+	 * Records the features of a FEAT reply
+	 *
+	 * @param	lines		The feature lines, without the reply code nor the leading space
+	 */
+	void discovered(Set<String> lines){
+
+		Set<String> read = new LinkedHashSet<String>();
+		for (String line : lines){
+			read.add(line.trim().toUpperCase());
+		}
+		if (!read.equals(this.features)){
+			this.features = Collections.unmodifiableSet(read);
+			if (logger.isDebugEnabled()){
+				logger.debug("Server " + this.server + " features: " + read);
+			}
+			save();
+		}
+	}
+
+	/**
+	 * @return	The features of the last FEAT reply of the server, null if it has not answered FEAT
+	 */
+	public Set<String> getFeatures(){
+		return this.features;
+	}
+
+	/**
+	 * Forgets everything known of the server, it is found out again as it is used
+	 */
+	public void clear(){
+
+		this.features = null;
+		this.probed.clear();
+		save();
+	}
+
+	/**
+	 * Keeps the capabilities of every server in a file, loading what it already holds
+	 *
+	 * @param	file	The file, created if it does not exist, null to keep them only in memory
+	 *
+	 * @throws	IOException	If the file exists and can not be read
+	 */
+	public static void setStore(File file) throws IOException {
+
+		if (file != null && file.exists()){
+			Properties properties = new Properties();
+			InputStream in = new FileInputStream(file);
+			try {
+				properties.load(in);
+			}
+			finally {
+				in.close();
+			}
+			load(properties);
+		}
+		synchronized (ServerCapabilities.class){
+			store = file;
+		}
+	}
+
+	/**
+	 * Helping method that adds the capabilities read from the store to the ones in memory. The
+	 * keys are host:port|feat|FEATURE and host:port|cmd|COMMAND
+	 */
+	private static void load(Properties properties){
+
+		Map<String, Set<String>> features = new HashMap<String, Set<String>>();
+		for (String key : properties.stringPropertyNames()){
+			String[] parts = key.split("\\|", 3);
+			if (parts.length != 3){
+				continue;
+			}
+			if (parts[1].equals("feat")){
+				Set<String> lines = features.get(parts[0]);
+				if (lines == null){
+					lines = new LinkedHashSet<String>();
+					features.put(parts[0], lines);
+				}
+				if (!parts[2].isEmpty()){
+					lines.add(parts[2]);
+				}
+			}
+			else if (parts[1].equals("cmd")){
+				forKey(parts[0]).probed.putIfAbsent(parts[2], Boolean.valueOf(properties.getProperty(key)));
+			}
+		}
+		for (Map.Entry<String, Set<String>> entry : features.entrySet()){
+			ServerCapabilities capabilities = forKey(entry.getKey());
+			if (capabilities.features == null){
+				capabilities.features = Collections.unmodifiableSet(entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Helping method that writes the capabilities of every server to the store, if there is one
+	 */
+	private static synchronized void save(){
+
+		if (store == null){
+			return;
+		}
+		Properties properties = new Properties();
+		for (ServerCapabilities capabilities : SERVERS.values()){
+			Set<String> lines = capabilities.features;
+			if (lines != null){
+				//the empty feature tells a FEAT reply listing nothing from no FEAT reply
+				properties.setProperty(capabilities.server + "|feat|", "");
+				for (String line : lines){
+					properties.setProperty(capabilities.server + "|feat|" + line, "");
+				}
+			}
+			for (Map.Entry<String, Boolean> entry : capabilities.probed.entrySet()){
+				properties.setProperty(capabilities.server + "|cmd|" + entry.getKey(), entry.getValue().toString());
+			}
+		}
+		File tmp = new File(store.getPath() + ".tmp");
+		try {
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				properties.store(out, "FTP server capabilities");
+			}
+			finally {
+				out.close();
+			}
+			if (!tmp.renameTo(store)){
+				//some platforms do not rename over an existing file
+				store.delete();
+				if (!tmp.renameTo(store)){
+					throw new IOException("Could not rename " + tmp + " to " + store);
+				}
+			}
+		}
+		catch (IOException e) {
+			logger.error("Could not store server capabilities in " + store + ": " + e);
+		}
+	}
+}
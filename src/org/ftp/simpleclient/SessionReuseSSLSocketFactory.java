@@ -0,0 +1,78 @@
+package org.ftp.simpleclient;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * SSLSocketFactory that layers TLS over the sockets of ftp4j as if they all went to the control
+ * connection address. JSSE looks cached sessions up by the host and port a socket is created for,
+ * and each data connection goes to a different port, so without this every data connection would
+ * do a full handshake. With it data connections resume the session of the control connection,
+ * which many servers require anyway
+ *
+ */
+class SessionReuseSSLSocketFactory extends SSLSocketFactory {
+
+	/**
+	 * The factory creating the sockets
+	 */
+	private final SSLSocketFactory factory;
+	/**
+	 * Host of the control connection
+	 */
+	private final String host;
+	/**
+	 * Port of the control connection
+	 */
+	private final int port;
+
+	/**
+	 * Constructor, wraps the given factory
+	 *
+	 * @param	factory		The factory creating the sockets
+	 * @param	host		The host of the control connection
+	 * @param	port		The port of the control connection
+	 *
+	 */
+	SessionReuseSSLSocketFactory(SSLSocketFactory factory, String host, int port){
+
+		this.factory = factory;
+		this.host = host;
+		this.port = port;
+	}
+
+	public String[] getDefaultCipherSuites() {
+		return this.factory.getDefaultCipherSuites();
+	}
+
+	public String[] getSupportedCipherSuites() {
+		return this.factory.getSupportedCipherSuites();
+	}
+
+	public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+		//the socket is connected already, host and port only name the session to resume
+		return this.factory.createSocket(socket, this.host, this.port, autoClose);
+	}
+
+	public Socket createSocket(String host, int port) throws IOException {
+		return this.factory.createSocket(host, port);
+	}
+
+	public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+		return this.factory.createSocket(host, port, localHost, localPort);
+	}
+
+	public Socket createSocket(InetAddress host, int port) throws IOException {
+		return this.factory.createSocket(host, port);
+	}
+
+	public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+		return this.factory.createSocket(address, port, localAddress, localPort);
+	}
+}
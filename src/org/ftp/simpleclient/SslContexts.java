@@ -0,0 +1,104 @@
+package org.ftp.simpleclient;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * SSLContexts shared by every FtpClient of the JVM, one per trust configuration. Building a context
+ * (and its SecureRandom) is expensive, and above all the TLS sessions of a context are only resumed
+ * by sockets of that same context, so sharing it lets new connections skip the full handshake
+ *
+ */
+class SslContexts {
+
+	/**
+	 * A logger object
+	 */
+	private static final Logger logger = Logger.getLogger(SslContexts.class);
+
+	/**
+	 * The contexts built so far, by trust configuration
+	 */
+	private static final ConcurrentMap<String, SSLContext> CONTEXTS = new ConcurrentHashMap<String, SSLContext>();
+
+	/**
+	 * Gives the shared context for a trust configuration, built the first time it is asked for
+	 *
+	 * @param	bypass				If true every server certificate is trusted (NOT RECOMMENDED)
+	 * @param	trustStore			Path of the trust store with the certificates to trust, null for the JDK one
+	 * @param	trustStorePassword	Password of the trust store, may be null
+	 *
+	 * @return	The context
+	 *
+	 * @throws	GeneralSecurityException	If the context could not be built
+	 * @throws	IOException					If the trust store could not be read
+	 */
+	static SSLContext get(boolean bypass, String trustStore, String trustStorePassword) throws GeneralSecurityException, IOException {
+
+		String key = bypass ? "bypass" : trustStore == null ? "default" : new File(trustStore).getCanonicalPath() + "\u0000" + trustStorePassword;
+		SSLContext context = CONTEXTS.get(key);
+		if (context != null){
+			return context;
+		}
+		TrustManager[] trustManagers = null;
+		if (bypass){
+			trustManagers = new TrustManager[] {
+					//trusts anything, the server certificate is not checked at all
+					new X509TrustManager() {
+
+						public X509Certificate[] getAcceptedIssuers() {
+							return new X509Certificate[0];
+						}
+						public void checkClientTrusted(X509Certificate[] certs, String authType) {
+
+						}
+						public void checkServerTrusted(X509Certificate[] certs, String authType) {
+							logger.info("Bypassing X509 SSL cert procedure, don't do this at home.");
+						}
+			} };
+		}
+		else if (trustStore != null){
+			trustManagers = loadTrustManagers(trustStore, trustStorePassword);
+		}
+		context = SSLContext.getInstance("TLS");
+		//null trust managers means the ones of the JDK
+		context.init(null, trustManagers, null);
+		SSLContext previous = CONTEXTS.putIfAbsent(key, context);
+		return previous != null ? previous : context;
+	}
+
+	/**
+	 * Helping method that builds the trust managers of a trust store file
+	 */
+	private static TrustManager[] loadTrustManagers(String trustStore, String trustStorePassword) throws GeneralSecurityException, IOException {
+
+		KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+		InputStream in = new FileInputStream(trustStore);
+		try {
+			keyStore.load(in, trustStorePassword == null ? null : trustStorePassword.toCharArray());
+		}
+		finally {
+			in.close();
+		}
+		TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		factory.init(keyStore);
+		return factory.getTrustManagers();
+	}
+}
@@ -0,0 +1,54 @@
+package org.ftp.simpleclient;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Outcome of a directory sync: the result of each file that had to be transferred, plus how many
+ * files were left alone because they had not changed and how many bytes that saved
+ *
+ */
+public class SyncResult extends DirTransferResult {
+
+	/**
+	 * Number of files that were already up to date
+	 */
+	private int skipped;
+	/**
+	 * Bytes of the files that were already up to date, i.e. not transferred
+	 */
+	private long bytesSaved;
+
+	/**
+	 * Constructor, starts counting the time spent
+	 *
+	 */
+	public SyncResult(){
+
+		super();
+		this.skipped = 0;
+		this.bytesSaved = 0;
+	}
+
+	/**
+	 * Records a file that did not need to be transferred
+	 *
+	 * @param	bytes		The size of the file
+	 */
+	public synchronized void addSkipped(long bytes){
+		this.skipped++;
+		this.bytesSaved += bytes;
+	}
+
+	public synchronized int getSkipped() {
+		return skipped;
+	}
+
+	public synchronized long getBytesSaved() {
+		return bytesSaved;
+	}
+
+	public String toString(){
+		return super.toString() + ", " + getSkipped() + " files up to date (" + getBytesSaved() + " bytes saved)";
+	}
+}
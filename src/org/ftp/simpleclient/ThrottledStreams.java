@@ -0,0 +1,112 @@
+package org.ftp.simpleclient;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Streams that take tokens from a set of RateLimiters for every byte going through them. While
+ * any of the limiters is limited, data moves in small chunks so transfers sharing a limiter take
+ * turns often. Otherwise data goes through untouched
+ *
+ */
+class ThrottledStreams {
+
+	/**
+	 * Most bytes moved at once while throttled
+	 */
+	private static final int CHUNK_SIZE = 8 * 1024;
+
+	/**
+	 * Input stream throttled by a set of limiters, used for uploads
+	 */
+	static class ThrottledInputStream extends FilterInputStream {
+
+		private final RateLimiter[] limiters;
+
+		ThrottledInputStream(InputStream in, RateLimiter[] limiters){
+			super(in);
+			this.limiters = limiters;
+		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0){
+				acquire(this.limiters, 1);
+			}
+			return b;
+		}
+
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (isLimited(this.limiters)){
+				length = Math.min(length, CHUNK_SIZE);
+			}
+			int read = super.read(buffer, offset, length);
+			if (read > 0){
+				acquire(this.limiters, read);
+			}
+			return read;
+		}
+
+		public long skip(long n) throws IOException {
+			//skipped bytes do not travel
+			return super.skip(n);
+		}
+	}
+
+	/**
+	 * Output stream throttled by a set of limiters, used for downloads
+	 */
+	static class ThrottledOutputStream extends FilterOutputStream {
+
+		private final RateLimiter[] limiters;
+
+		ThrottledOutputStream(OutputStream out, RateLimiter[] limiters){
+			super(out);
+			this.limiters = limiters;
+		}
+
+		public void write(int b) throws IOException {
+			acquire(this.limiters, 1);
+			this.out.write(b);
+		}
+
+		public void write(byte[] buffer, int offset, int length) throws IOException {
+			while (length > 0){
+				int chunk = isLimited(this.limiters) ? Math.min(length, CHUNK_SIZE) : length;
+				acquire(this.limiters, chunk);
+				this.out.write(buffer, offset, chunk);
+				offset += chunk;
+				length -= chunk;
+			}
+		}
+	}
+
+	/**
+	 * Helping method that tells if any of the limiters is limited
+	 */
+	private static boolean isLimited(RateLimiter[] limiters){
+
+		for (int i=0; i<limiters.length; i++){
+			if (limiters[i].isLimited()){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Helping method that takes tokens from every limiter
+	 */
+	private static void acquire(RateLimiter[] limiters, int bytes) throws IOException {
+
+		for (int i=0; i<limiters.length; i++){
+			limiters[i].acquire(bytes);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package org.ftp.simpleclient;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * SSLSocketFactory that starts the TLS handshake of every socket it creates right away and tells
+ * its FtpClient how long it took. ftp4j would otherwise do the handshake implicitly on the first
+ * read or write, hidden in the time of whatever command came first
+ *
+ */
+class TimedSSLSocketFactory extends SSLSocketFactory {
+
+	/**
+	 * The factory creating the sockets
+	 */
+	private final SSLSocketFactory factory;
+	/**
+	 * The client the handshakes are reported to
+	 */
+	private final FtpClient owner;
+
+	/**
+	 * Constructor, wraps the given factory
+	 *
+	 * @param	factory		The factory creating the sockets
+	 * @param	owner		The client the handshakes are reported to
+	 *
+	 */
+	TimedSSLSocketFactory(SSLSocketFactory factory, FtpClient owner){
+
+		this.factory = factory;
+		this.owner = owner;
+	}
+
+	public String[] getDefaultCipherSuites() {
+		return this.factory.getDefaultCipherSuites();
+	}
+
+	public String[] getSupportedCipherSuites() {
+		return this.factory.getSupportedCipherSuites();
+	}
+
+	public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+		return handshake(this.factory.createSocket(socket, host, port, autoClose));
+	}
+
+	public Socket createSocket(String host, int port) throws IOException {
+		return handshake(this.factory.createSocket(host, port));
+	}
+
+	public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+		return handshake(this.factory.createSocket(host, port, localHost, localPort));
+	}
+
+	public Socket createSocket(InetAddress host, int port) throws IOException {
+		return handshake(this.factory.createSocket(host, port));
+	}
+
+	public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+		return handshake(this.factory.createSocket(address, port, localAddress, localPort));
+	}
+
+	/**
+	 * Helping method that does the handshake of a new socket, only timed when there are metrics
+	 *
+	 * @param	socket		The new socket
+	 *
+	 * @return	The same socket
+	 */
+	private Socket handshake(Socket socket) throws IOException {
+
+		FtpMetrics metrics = this.owner.getMetrics();
+		if (metrics != null && socket instanceof SSLSocket){
+			long start = System.nanoTime();
+			((SSLSocket) socket).startHandshake();
+			metrics.handshakeCompleted(System.nanoTime() - start);
+		}
+		return socket;
+	}
+}
@@ -0,0 +1,592 @@
+package org.ftp.simpleclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Durable queue of file transfers drained by a pool of worker threads over pooled sessions of an
+ * FtpClient. Jobs run by priority, and in the order they were added within the same priority. A
+ * job equal to one still pending or running (same direction, local file and remote directory) is
+ * not added twice.
+ *
+ * Every job added, started, done or failed is a record appended to a journal on disk, the same way
+ * as RemoteManifest. When the queue is opened again after a crash or a shutdown, the jobs that were
+ * pending or running are queued again. Only those that had started complete their partial files,
+ * the others are transferred from scratch as any file already there is not theirs
+ *
+ */
+public class TransferQueue {
+
+	/**
+	 * A logger object
+	 */
+	private static final Logger logger = Logger.getLogger(TransferQueue.class);
+
+	/**
+	 * Priority classes of the jobs
+	 * HIGH - Run before any other job
+	 * NORMAL - The default
+	 * LOW - Run when there is nothing else to do
+	 */
+	public enum priority{HIGH, NORMAL, LOW}
+
+	/**
+	 * Record types of the journal
+	 */
+	private static final byte RECORD_ADD = 1;
+	private static final byte RECORD_DONE = 2;
+	private static final byte RECORD_FAILED = 3;
+	private static final byte RECORD_STARTED = 4;
+
+	/**
+	 * The journal file
+	 */
+	private final File file;
+	/**
+	 * The client doing the transfers, set up already
+	 */
+	private final FtpClient client;
+	/**
+	 * Number of worker threads
+	 */
+	private final int workers;
+	/**
+	 * Jobs pending or running, by id
+	 */
+	private final Map<Long, Job> jobs;
+	/**
+	 * Jobs pending or running, by what they transfer, to drop duplicates
+	 */
+	private final Map<String, Job> jobsByKey;
+	/**
+	 * Jobs waiting for a worker, by priority and then by id
+	 */
+	private final PriorityQueue<Job> pending;
+	/**
+	 * Results of the jobs that failed since the queue was opened
+	 */
+	private final List<TransferResult> failures;
+	/**
+	 * Stream appending records to the journal
+	 */
+	private DataOutputStream out;
+	/**
+	 * Number of records in the journal, used to decide when to compact it
+	 */
+	private int records;
+	/**
+	 * Id of the next job added
+	 */
+	private long nextId;
+	/**
+	 * Pool the sessions are borrowed from, the one of the client or one of our own
+	 */
+	private FtpSessionPool pool;
+	/**
+	 * The worker threads, null when the queue is not started
+	 */
+	private Thread[] threads;
+	/**
+	 * Number of jobs being transferred right now
+	 */
+	private int active;
+	/**
+	 * Number of jobs done and failed since the queue was opened
+	 */
+	private int completed;
+	private int failed;
+
+	/**
+	 * A transfer waiting in the queue
+	 */
+	private static class Job {
+
+		private final long id;
+		private final priority level;
+		private final boolean upload;
+		/**
+		 * Path of the local file
+		 */
+		private final String localPath;
+		/**
+		 * Directory of the file in the FTP server
+		 */
+		private final String remoteDir;
+		/**
+		 * If true a worker took the job, it may have left a partial file
+		 */
+		private boolean started;
+
+		Job(long id, priority level, boolean upload, String localPath, String remoteDir){
+			this.id = id;
+			this.level = level;
+			this.upload = upload;
+			this.localPath = localPath;
+			this.remoteDir = remoteDir;
+		}
+
+		/**
+		 * @return	What the job transfers, equal for duplicated jobs
+		 */
+		String key(){
+			return (this.upload ? "U" : "D") + this.localPath + "\u0000" + this.remoteDir;
+		}
+	}
+
+	/**
+	 * Constructor, loads the jobs left pending in the given journal, if any. Nothing runs until start is called
+	 *
+	 * @param	file		The journal file, created if it does not exist
+	 * @param	client		The client doing the transfers, set up and logged in before the queue is started
+	 * @param	workers		The number of transfers running at once
+	 *
+	 * @throws	IOException	If the file can not be read or opened for writing
+	 */
+	public TransferQueue(File file, FtpClient client, int workers) throws IOException {
+
+		if (workers < 1){
+			throw new IllegalArgumentException("A transfer queue needs at least one worker");
+		}
+		this.file = file;
+		this.client = client;
+		this.workers = workers;
+		this.jobs = new LinkedHashMap<Long, Job>();
+		this.jobsByKey = new HashMap<String, Job>();
+		this.pending = new PriorityQueue<Job>(64, new Comparator<Job>() {
+			public int compare(Job a, Job b) {
+				int order = a.level.compareTo(b.level);
+				return order != 0 ? order : Long.compare(a.id, b.id);
+			}
+		});
+		this.failures = new ArrayList<TransferResult>();
+		this.records = 0;
+		this.nextId = 1;
+		boolean damaged = !load();
+		for (Job job : this.jobs.values()){
+			this.jobsByKey.put(job.key(), job);
+			this.pending.add(job);
+		}
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		//do not append after a broken record
+		if (damaged){
+			compact();
+		}
+		logger.info("Loaded transfer queue " + file + " with " + this.jobs.size() + " pending jobs");
+	}
+
+	/**
+	 * Queues the upload of a file
+	 *
+	 * @param	filepath	The absolute path to the file to upload
+	 * @param	destDir		The destination directory where the file will be placed
+	 * @param	level		The priority of the job
+	 *
+	 * @return	<code>false</code> if the same upload is already pending
+	 *
+	 * @throws	IOException	If the job could not be written to the journal, it is not queued then
+	 */
+	public boolean addUpload(String filepath, String destDir, priority level) throws IOException {
+		return add(true, new File(filepath).getAbsolutePath(), destDir, level);
+	}
+
+	/**
+	 * Queues the download of a file
+	 *
+	 * @param	file		The name of the file to download, just the name no path required
+	 * @param	sourceDir	The path where the file is located in the FTP server
+	 * @param	destDir		The local path where the file will be saved
+	 * @param	level		The priority of the job
+	 *
+	 * @return	<code>false</code> if the same download is already pending
+	 *
+	 * @throws	IOException	If the job could not be written to the journal, it is not queued then
+	 */
+	public boolean addDownload(String file, String sourceDir, String destDir, priority level) throws IOException {
+		return add(false, new File(destDir, file).getAbsolutePath(), sourceDir, level);
+	}
+
+	/**
+	 * Starts the worker threads, borrowing sessions from the pool of the client or, if it has none,
+	 * from a pool of our own with a session per worker
+	 */
+	public synchronized void start(){
+
+		if (this.threads != null){
+			return;
+		}
+		this.pool = this.client.getSessionPool() != null ? this.client.getSessionPool() : new FtpSessionPool(this.workers, this.workers, 60000);
+		this.threads = new Thread[this.workers];
+		for (int i=0; i<this.workers; i++){
+			this.threads[i] = new Thread(new Runnable() {
+				public void run() {
+					work();
+				}
+			}, "TransferQueue-" + (i + 1));
+			this.threads[i].setDaemon(true);
+			this.threads[i].start();
+		}
+		logger.info("Transfer queue " + this.file + " started with " + this.workers + " workers");
+	}
+
+	/**
+	 * Waits until there are no jobs pending nor running
+	 *
+	 * @param	timeout		Longest time to wait, in milliseconds
+	 *
+	 * @return	<code>true</code> if the queue is idle, <code>false</code> if the time ran out
+	 *
+	 * @throws	InterruptedException	If the thread is interrupted while waiting
+	 */
+	public synchronized boolean awaitIdle(long timeout) throws InterruptedException {
+
+		long deadline = System.currentTimeMillis() + timeout;
+		while (!this.pending.isEmpty() || this.active > 0){
+			long left = deadline - System.currentTimeMillis();
+			if (left <= 0){
+				return false;
+			}
+			wait(left);
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the workers once the jobs they are running are done and closes the journal. The jobs
+	 * still pending stay in the journal and run when the queue is opened again
+	 *
+	 * @throws	IOException	If the journal can not be closed
+	 */
+	public void shutdown() throws IOException {
+
+		Thread[] running;
+		synchronized (this) {
+			running = this.threads;
+			this.threads = null;
+			notifyAll();
+		}
+		if (running != null){
+			for (int i=0; i<running.length; i++){
+				try {
+					running[i].join();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			if (this.pool != this.client.getSessionPool()){
+				this.pool.close();
+			}
+		}
+		synchronized (this) {
+			this.out.close();
+		}
+		logger.info("Transfer queue " + this.file + " shut down, " + getPendingCount() + " jobs left pending");
+	}
+
+	/**
+	 * Rewrites the journal with only the jobs pending or running
+	 *
+	 * @throws	IOException	If the journal can not be rewritten
+	 */
+	public synchronized void compact() throws IOException {
+
+		File tmp = new File(this.file.getPath() + ".tmp");
+		DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			for (Job job : this.jobs.values()){
+				writeJob(compacted, job);
+				if (job.started){
+					compacted.writeByte(RECORD_STARTED);
+					compacted.writeLong(job.id);
+				}
+			}
+		}
+		finally {
+			compacted.close();
+		}
+
+		this.out.close();
+		if ((this.file.exists() && !this.file.delete()) || !tmp.renameTo(this.file)){
+			throw new IOException("Could not replace transfer queue " + this.file + " with " + tmp);
+		}
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, true)));
+		this.records = 0;
+		for (Job job : this.jobs.values()){
+			this.records += job.started ? 2 : 1;
+		}
+		logger.info("Transfer queue " + this.file + " compacted to " + this.jobs.size() + " jobs");
+	}
+
+	/**
+	 * Helping method that queues a job unless an equal one is pending or running
+	 */
+	private synchronized boolean add(boolean upload, String localPath, String remoteDir, priority level) throws IOException {
+
+		Job job = new Job(this.nextId, level, upload, localPath, remoteDir);
+		if (this.jobsByKey.containsKey(job.key())){
+			if (logger.isDebugEnabled()){
+				logger.debug("Job for " + localPath + " already queued, ignoring it");
+			}
+			return false;
+		}
+		//journaled before it can run, so it is not lost if we crash right after
+		writeJob(this.out, job);
+		this.out.flush();
+		this.records++;
+		this.nextId++;
+		this.jobs.put(job.id, job);
+		this.jobsByKey.put(job.key(), job);
+		this.pending.add(job);
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Helping method run by each worker thread, transfers jobs until the queue is shut down
+	 */
+	private void work(){
+
+		Thread self = Thread.currentThread();
+		while (true){
+			Job job;
+			FtpSessionPool sessions;
+			boolean resume;
+			synchronized (this) {
+				while (isRunning(self) && this.pending.isEmpty()){
+					try {
+						wait();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (!isRunning(self)){
+					return;
+				}
+				job = this.pending.poll();
+				sessions = this.pool;
+				this.active++;
+				resume = job.started;
+				if (!job.started){
+					start(job);
+				}
+			}
+
+			long start = System.currentTimeMillis();
+			TransferResult result = null;
+			try {
+				result = this.client.transferQueuedFile(sessions, new File(job.localPath), job.remoteDir, job.upload, resume);
+			}
+			catch (RuntimeException e) {
+				logger.error("Unexpected error transferring " + job.localPath, e);
+				result = new TransferResult(job.localPath, System.currentTimeMillis() - start, e);
+			}
+			finally {
+				finish(job, result);
+			}
+		}
+	}
+
+	/**
+	 * Helping method that records that a worker took a job, so it completes its partial file if it
+	 * runs again after a restart
+	 *
+	 * @param	job		The job
+	 */
+	private void start(Job job){
+
+		job.started = true;
+		try {
+			this.out.writeByte(RECORD_STARTED);
+			this.out.writeLong(job.id);
+			this.out.flush();
+			this.records++;
+		}
+		catch (IOException e) {
+			//after a restart it is transferred from scratch, which is slower but safe
+			logger.error("Could not write to transfer queue " + this.file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Helping method that records the outcome of a job and lets it be queued again
+	 *
+	 * @param	job		The job
+	 * @param	result	The result of its transfer, null if the worker died before it was known
+	 */
+	private synchronized void finish(Job job, TransferResult result){
+
+		this.active--;
+		boolean success = result != null && result.isSuccess();
+		if (result == null){
+			//left pending in the journal, it runs again after a restart
+			logger.error("Worker died while transferring " + job.localPath);
+			this.jobs.remove(job.id);
+			this.jobsByKey.remove(job.key());
+		}
+		else{
+			this.jobs.remove(job.id);
+			this.jobsByKey.remove(job.key());
+			if (success){
+				this.completed++;
+			}
+			else{
+				this.failed++;
+				this.failures.add(result);
+			}
+			try {
+				this.out.writeByte(success ? RECORD_DONE : RECORD_FAILED);
+				this.out.writeLong(job.id);
+				this.out.flush();
+				this.records++;
+				compactIfNeeded();
+			}
+			catch (IOException e) {
+				logger.error("Could not write to transfer queue " + this.file + ", " + job.localPath + " will be transferred again after a restart");
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Helping method that tells if a worker thread must keep taking jobs
+	 */
+	private boolean isRunning(Thread worker){
+
+		if (this.threads == null){
+			return false;
+		}
+		for (int i=0; i<this.threads.length; i++){
+			if (this.threads[i] == worker){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Helping method that compacts the journal once most of its records are outdated
+	 */
+	private void compactIfNeeded() throws IOException {
+		if (this.records > 1000 && this.records > 4 * this.jobs.size()){
+			compact();
+		}
+	}
+
+	/**
+	 * Helping method that writes the record of a queued job
+	 *
+	 * @param	stream		Where the record is written
+	 * @param	job			The job
+	 */
+	private static void writeJob(DataOutputStream stream, Job job) throws IOException {
+
+		stream.writeByte(RECORD_ADD);
+		stream.writeLong(job.id);
+		stream.writeByte(job.level.ordinal());
+		stream.writeBoolean(job.upload);
+		stream.writeUTF(job.localPath);
+		stream.writeUTF(job.remoteDir);
+	}
+
+	/**
+	 * Helping method that replays the journal. A truncated last record, left by a crash, is ignored
+	 *
+	 * @return	<code>false</code> if the journal ended with a broken record
+	 */
+	private boolean load() throws IOException {
+
+		if (!this.file.exists()){
+			return true;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+		try {
+			int type;
+			while ((type = in.read()) != -1){
+				long id = in.readLong();
+				if (type == RECORD_ADD){
+					int level = in.readByte();
+					boolean upload = in.readBoolean();
+					String localPath = in.readUTF();
+					String remoteDir = in.readUTF();
+					if (level < 0 || level >= priority.values().length){
+						logger.error("Transfer queue " + this.file + " is corrupted, ignoring the rest of it");
+						return false;
+					}
+					this.jobs.put(id, new Job(id, priority.values()[level], upload, localPath, remoteDir));
+				}
+				else if (type == RECORD_STARTED){
+					Job job = this.jobs.get(id);
+					if (job != null){
+						job.started = true;
+					}
+				}
+				else if (type == RECORD_DONE || type == RECORD_FAILED){
+					this.jobs.remove(id);
+				}
+				else{
+					logger.error("Transfer queue " + this.file + " is corrupted, ignoring the rest of it");
+					return false;
+				}
+				this.nextId = Math.max(this.nextId, id + 1);
+				this.records++;
+			}
+			return true;
+		}
+		catch (EOFException e) {
+			logger.error("Transfer queue " + this.file + " ends with a truncated record, ignoring it");
+			return false;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 *  Getters and setters
+	 *
+	 */
+	public synchronized int getPendingCount() {
+		return jobs.size();
+	}
+
+	public synchronized int getCompletedCount() {
+		return completed;
+	}
+
+	public synchronized int getFailedCount() {
+		return failed;
+	}
+
+	public synchronized List<TransferResult> getFailures() {
+		return new ArrayList<TransferResult>(failures);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+}
@@ -0,0 +1,111 @@
+package org.ftp.simpleclient;
+
+/**
+ * @author Alejandro Villamarin
+ * @version 1.0.0
+ *
+ * Outcome of a single file transfer: the file name, how many bytes were moved, how long it took
+ * and, if it went wrong, the exception that made it fail
+ *
+ */
+public class TransferResult {
+
+	/**
+	 * Name of the transferred file
+	 */
+	private final String name;
+	/**
+	 * Flag to indicate whether the transfer was successful
+	 */
+	private final boolean success;
+	/**
+	 * Number of bytes transferred
+	 */
+	private final long bytes;
+	/**
+	 * Time spent in the transfer, in milliseconds
+	 */
+	private final long elapsed;
+	/**
+	 * The exception that made the transfer fail, null if it was successful
+	 */
+	private final Exception error;
+
+	/**
+	 * Constructor for a successful transfer
+	 *
+	 * @param	name		The name of the file
+	 * @param	bytes		The number of bytes transferred
+	 * @param	elapsed		The time spent in milliseconds
+	 *
+	 */
+	public TransferResult(String name, long bytes, long elapsed){
+
+		this.name = name;
+		this.success = true;
+		this.bytes = bytes;
+		this.elapsed = elapsed;
+		this.error = null;
+	}
+
+	/**
+	 * Constructor for a failed transfer
+	 *
+	 * @param	name		The name of the file
+	 * @param	elapsed		The time spent in milliseconds before failing
+	 * @param	error		The exception that made the transfer fail
+	 *
+	 */
+	public TransferResult(String name, long elapsed, Exception error){
+
+		this.name = name;
+		this.success = false;
+		this.bytes = 0;
+		this.elapsed = elapsed;
+		this.error = error;
+	}
+
+	/**
+	 * The transfer rate of this file
+	 *
+	 * @return	Bytes per second, 0 if nothing was measured
+	 */
+	public double getBytesPerSecond(){
+		if (this.elapsed <= 0){
+			return 0;
+		}
+		return this.bytes * 1000.0 / this.elapsed;
+	}
+
+	public String toString(){
+		if (this.success){
+			return this.name + ": " + this.bytes + " bytes in " + this.elapsed + " ms";
+		}
+		return this.name + ": failed after " + this.elapsed + " ms (" + this.error + ")";
+	}
+
+
+	/**
+	 *  Getters
+	 *
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	public Exception getError() {
+		return error;
+	}
+}